@@ -27,6 +27,7 @@ function App() {
   const [proteinOptions, setProteinOptions] = useState([]);
   const [proteinDistribution, setProteinDistribution] = useState({});
   const [startDate, setStartDate] = useState(() => format(new Date(), 'yyyy-MM-dd'));
+  const [postalCode, setPostalCode] = useState('');
   const [menu, setMenu] = useState([]);
   const [selectedMeals, setSelectedMeals] = useState({});
   const [loading, setLoading] = useState(false);
@@ -127,7 +128,8 @@ function App() {
       const requestPayload = {
         proteinDistribution: getActiveProteins(),
         days: 7,
-        startDate
+        startDate,
+        postalCode: postalCode.trim() || undefined
       };
 
       const response = await axios.post('/api/menu/generate', requestPayload);
@@ -136,7 +138,7 @@ function App() {
       // Try to get weather data, but don't break if weather API fails
       try {
         const weatherResponse = await axios.get('/api/weather/forecast', {
-          params: { days: menuItems.length || 7, startDate }
+          params: { days: menuItems.length || 7, startDate, postalCode: postalCode.trim() || undefined }
         });
         const forecast = Array.isArray(weatherResponse.data) ? weatherResponse.data : [];
         menuItems = attachWeatherByDate(menuItems, forecast, startDate);
@@ -148,7 +150,7 @@ function App() {
       setMenu(menuItems);
       setSelectedMeals({});
     } catch (error) {
-      setError('Failed to generate menu. Please try again.');
+      setError(error.response?.data?.message || 'Failed to generate menu. Please try again.');
     } finally {
       setLoading(false);
     }
@@ -173,7 +175,8 @@ function App() {
       const shuffleResponse = await axios.post('/api/menu/generate', {
         proteinDistribution: getActiveProteins(),
         days: mealsToShuffleIndexes.length,
-        startDate
+        startDate,
+        postalCode: postalCode.trim() || undefined
       });
 
       const newMenu = [...menu];
@@ -190,7 +193,7 @@ function App() {
       // Re-fetch weather and attach
       try {
         const weatherResponse = await axios.get('/api/weather/forecast', {
-          params: { days: newMenu.length || 7, startDate }
+          params: { days: newMenu.length || 7, startDate, postalCode: postalCode.trim() || undefined }
         });
         const forecast = Array.isArray(weatherResponse.data) ? weatherResponse.data : [];
         setMenu(attachWeatherByDate(newMenu, forecast, startDate));
@@ -198,7 +201,7 @@ function App() {
         setMenu(newMenu);
       }
     } catch (error) {
-      setError('Failed to shuffle menu. Please try again.');
+      setError(error.response?.data?.message || 'Failed to shuffle menu. Please try again.');
     } finally {
       setLoading(false);
     }
@@ -314,6 +317,18 @@ function App() {
             />
           </div>
 
+          {/* Forecast location - blank uses the server's configured location */}
+          <div className="form-group">
+            <label>ZIP Code (optional, for weather)</label>
+            <input
+              type="text"
+              className="form-control"
+              value={postalCode}
+              placeholder="e.g. 95014"
+              onChange={(e) => setPostalCode(e.target.value)}
+            />
+          </div>
+
           {/* Protein Distribution */}
           <div className="form-group">
             <label>
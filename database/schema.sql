@@ -3,6 +3,17 @@
 CREATE DATABASE IF NOT EXISTS menu_gen;
 USE menu_gen;
 
+-- Families hosted on this server. Each has its own recipes on top of the shared
+-- base library, and its own catalog version so its edits never invalidate
+-- anyone else's cached indexes or menus.
+CREATE TABLE IF NOT EXISTS households (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    name VARCHAR(255) NOT NULL,
+    catalog_version BIGINT NOT NULL DEFAULT 0,
+    ingredient_version BIGINT NOT NULL DEFAULT 0,  -- bumped by edits to its meals' ingredients
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
 -- Create meals table
 CREATE TABLE IF NOT EXISTS meals (
     id INT AUTO_INCREMENT PRIMARY KEY,
@@ -13,8 +24,49 @@ CREATE TABLE IF NOT EXISTS meals (
     cook_method VARCHAR(100),
     source VARCHAR(255),
     category VARCHAR(100),
+    household_id INT NULL,  -- NULL = shared base library
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
-    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    FOREIGN KEY (household_id) REFERENCES households(id) ON DELETE CASCADE
+);
+
+-- Single-row catalog version, bumped in the same transaction as every base-library write.
+-- Each server node polls it and re-reads only meals whose updated_at moved.
+CREATE TABLE IF NOT EXISTS catalog_version (
+    id TINYINT PRIMARY KEY,
+    version BIGINT NOT NULL DEFAULT 0
+);
+
+INSERT IGNORE INTO catalog_version (id, version) VALUES (1, 0);
+-- Row 2 versions the base library's ingredient lists, which nodes index separately
+INSERT IGNORE INTO catalog_version (id, version) VALUES (2, 0);
+
+-- Feedback totals per household and meal, flushed in batches by each server node
+CREATE TABLE IF NOT EXISTS meal_stats (
+    household_id INT NOT NULL DEFAULT 0,  -- 0 = feedback sent without a household
+    meal_id INT NOT NULL,
+    accepts BIGINT NOT NULL DEFAULT 0,
+    skips BIGINT NOT NULL DEFAULT 0,
+    swaps BIGINT NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    PRIMARY KEY (household_id, meal_id)
+);
+
+-- Ingredient names, shared by every household; each only lists the ones its meals use
+CREATE TABLE IF NOT EXISTS ingredients (
+    id INT AUTO_INCREMENT PRIMARY KEY,
+    name VARCHAR(255) NOT NULL UNIQUE
+);
+
+-- What each meal needs; quantity and unit are optional
+CREATE TABLE IF NOT EXISTS meal_ingredients (
+    meal_id INT NOT NULL,
+    ingredient_id INT NOT NULL,
+    quantity DECIMAL(10, 2),
+    unit VARCHAR(50),
+    PRIMARY KEY (meal_id, ingredient_id),
+    FOREIGN KEY (meal_id) REFERENCES meals(id) ON DELETE CASCADE,
+    FOREIGN KEY (ingredient_id) REFERENCES ingredients(id)
 );
 
 -- Insert the provided meal data
@@ -166,4 +218,7 @@ CREATE INDEX idx_protein ON meals(protein);
 CREATE INDEX idx_cuisine ON meals(cuisine);
 CREATE INDEX idx_cook_time ON meals(cook_time);
 CREATE INDEX idx_cook_method ON meals(cook_method);
-CREATE INDEX idx_category ON meals(category); 
\ No newline at end of file
+CREATE INDEX idx_category ON meals(category);
+CREATE INDEX idx_updated_at ON meals(updated_at);
+CREATE INDEX idx_household ON meals(household_id);
+CREATE INDEX idx_meal_stats_updated ON meal_stats(updated_at);
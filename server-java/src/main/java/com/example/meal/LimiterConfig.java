@@ -0,0 +1,32 @@
+package com.example.meal;
+
+import com.example.meal.service.ConcurrencyLimiter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class LimiterConfig {
+
+  // Generation is CPU-bound on the in-memory catalog; weather waits on Open-Meteo
+  @Bean
+  public ConcurrencyLimiter generateLimiter(
+      @Value("${limits.generate.initial:20}") int initial,
+      @Value("${limits.generate.min:4}") int min,
+      @Value("${limits.generate.max:100}") int max,
+      @Value("${limits.generate.tolerance:2.0}") double tolerance,
+      MeterRegistry meters) {
+    return new ConcurrencyLimiter("generate", initial, min, max, tolerance, meters);
+  }
+
+  @Bean
+  public ConcurrencyLimiter weatherLimiter(
+      @Value("${limits.weather.initial:10}") int initial,
+      @Value("${limits.weather.min:2}") int min,
+      @Value("${limits.weather.max:50}") int max,
+      @Value("${limits.weather.tolerance:2.0}") double tolerance,
+      MeterRegistry meters) {
+    return new ConcurrencyLimiter("weather", initial, min, max, tolerance, meters);
+  }
+}
@@ -8,6 +8,8 @@ public class Meal {
     private String cookTime;         // VARCHAR in DB
     private String cookMethod;
     private String source;
+    private String category;         // "Main", "Soup", "Salad", ...
+    private Long householdId;        // null = shared base library
 
     public Meal() {}
 
@@ -43,4 +45,10 @@ public class Meal {
 
     public String getSource() { return source; }
     public void setSource(String source) { this.source = source; }
+
+    public String getCategory() { return category; }
+    public void setCategory(String category) { this.category = category; }
+
+    public Long getHouseholdId() { return householdId; }
+    public void setHouseholdId(Long householdId) { this.householdId = householdId; }
 }
@@ -2,8 +2,12 @@ package com.example.meal;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
+@ImportRuntimeHints(MealRuntimeHints.class)
 public class MealApplication {
   public static void main(String[] args) {
     SpringApplication.run(MealApplication.class, args);
@@ -0,0 +1,29 @@
+package com.example.meal;
+
+import com.example.meal.dto.MealFeedback;
+import com.example.meal.dto.MealIngredient;
+import com.example.meal.dto.MenuGenerateRequest;
+import com.example.meal.dto.MenuResponse;
+import com.example.meal.dto.ShoppingItem;
+import com.example.meal.dto.WeatherDay;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+
+/**
+ * Reflection and resource hints for AOT / native-image builds.
+ * Controllers return ResponseEntity<?> and BeanPropertyRowMapper populates Meal
+ * through setters, so neither is visible to Spring's own AOT inference.
+ */
+public class MealRuntimeHints implements RuntimeHintsRegistrar {
+
+  @Override
+  public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+    BindingReflectionHintsRegistrar binding = new BindingReflectionHintsRegistrar();
+    binding.registerReflectionHints(hints.reflection(),
+        Meal.class, MenuGenerateRequest.class, MealFeedback.class, WeatherDay.class,
+        MealIngredient.class, ShoppingItem.class, MenuResponse.class);
+
+    hints.resources().registerPattern("postal-codes.csv");
+  }
+}
@@ -0,0 +1,149 @@
+package com.example.meal;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Writes meals as an array directly to the response stream, one element at a time,
+ * in JSON, Smile or CBOR depending on the Accept header. Exports use line-oriented
+ * NDJSON or CSV instead, so they can be processed without parsing the whole file.
+ */
+@Component
+public class MealStreamWriter {
+
+    public static final MediaType SMILE = new MediaType("application", "x-jackson-smile");
+    public static final MediaType CBOR = MediaType.APPLICATION_CBOR;
+    public static final MediaType NDJSON = MediaType.APPLICATION_NDJSON;
+    public static final MediaType CSV = new MediaType("text", "csv", StandardCharsets.UTF_8);
+
+    private static final int EXPORT_BUFFER_BYTES = 64 * 1024;
+    private static final String[] CSV_HEADER = {
+        "id", "name", "protein", "cuisine", "cookTime", "cookMethod", "source", "category", "householdId"
+    };
+
+    private final ObjectWriter json = writerFor(new ObjectMapper());
+    private final ObjectWriter smile = writerFor(new ObjectMapper(new SmileFactory()));
+    private final ObjectWriter cbor = writerFor(new ObjectMapper(new CBORFactory()));
+
+    /** Pick the first of JSON/Smile/CBOR acceptable to the client; JSON when nothing matches. */
+    public MediaType negotiate(String accept) {
+        if (accept == null || accept.isBlank()) return MediaType.APPLICATION_JSON;
+        List<MediaType> types;
+        try {
+            types = MediaType.parseMediaTypes(accept);
+        } catch (IllegalArgumentException e) {
+            return MediaType.APPLICATION_JSON;
+        }
+        MimeTypeUtils.sortBySpecificity(types);
+        for (MediaType t : types) {
+            if (t.includes(MediaType.APPLICATION_JSON)) return MediaType.APPLICATION_JSON;
+            if (t.includes(SMILE)) return SMILE;
+            if (t.includes(CBOR)) return CBOR;
+        }
+        return MediaType.APPLICATION_JSON;
+    }
+
+    /**
+     * Stream the meals produced by {@code source} as an array in the given format.
+     * The source pushes each meal to the consumer it is handed, so nothing is buffered.
+     */
+    public StreamingResponseBody stream(MediaType type, Consumer<Consumer<Meal>> source) {
+        ObjectWriter writer = writerFor(type);
+        return out -> {
+            try (JsonGenerator gen = writer.createGenerator(out)) {
+                gen.writeStartArray();
+                source.accept(meal -> {
+                    try {
+                        writer.writeValue(gen, meal);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                gen.writeEndArray();
+            }
+        };
+    }
+
+    /** One JSON object per line. */
+    public StreamingResponseBody ndjson(Consumer<Consumer<Meal>> source) {
+        return out -> {
+            OutputStream buffered = new BufferedOutputStream(out, EXPORT_BUFFER_BYTES);
+            try (JsonGenerator gen = json.createGenerator(buffered)) {
+                gen.setRootValueSeparator(null);
+                source.accept(meal -> {
+                    try {
+                        json.writeValue(gen, meal);
+                        gen.writeRaw('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        };
+    }
+
+    /** RFC 4180 CSV with a header row. */
+    public StreamingResponseBody csv(Consumer<Consumer<Meal>> source) {
+        return out -> {
+            Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), EXPORT_BUFFER_BYTES);
+            writeCsvRow(w, CSV_HEADER);
+            source.accept(meal -> {
+                try {
+                    writeCsvRow(w,
+                            meal.getId() == null ? "" : meal.getId().toString(),
+                            meal.getName(), meal.getProtein(), meal.getCuisine(),
+                            meal.getCookTime(), meal.getCookMethod(), meal.getSource(), meal.getCategory(),
+                            meal.getHouseholdId() == null ? "" : meal.getHouseholdId().toString());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            w.flush();
+        };
+    }
+
+    private static void writeCsvRow(Writer w, String... fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) w.write(',');
+            String f = fields[i] == null ? "" : fields[i];
+            if (f.indexOf(',') >= 0 || f.indexOf('"') >= 0 || f.indexOf('\n') >= 0 || f.indexOf('\r') >= 0) {
+                w.write('"');
+                w.write(f.replace("\"", "\"\""));
+                w.write('"');
+            } else {
+                w.write(f);
+            }
+        }
+        w.write("\r\n");
+    }
+
+    private ObjectWriter writerFor(MediaType type) {
+        if (SMILE.includes(type)) return smile;
+        if (CBOR.includes(type)) return cbor;
+        return json;
+    }
+
+    private static ObjectWriter writerFor(ObjectMapper mapper) {
+        // Flushing after every meal would defeat the output buffer
+        return mapper.writerFor(Meal.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+}
@@ -1,52 +1,266 @@
 package com.example.meal;
 
+import com.example.meal.dto.MealFeedback;
+import com.example.meal.dto.MealIngredient;
 import com.example.meal.service.MealService;
+import com.example.meal.service.MealStatsService;
+import com.example.meal.service.TenantCatalogs;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @RestController
 @RequestMapping("/api")
 public class MealsController {
 
+    // Optional; names the household whose recipes overlay the shared base library
+    static final String HOUSEHOLD_HEADER = "X-Household-Id";
+    private static final int MAX_SIMILAR = 50;
+
     private final MealService mealService;
+    private final MealStreamWriter mealStreamWriter;
+    private final MealStatsService mealStats;
+    // Each running export or meal listing pins a pooled connection until the client has read it all
+    private final Semaphore exportSlots;
+    private final Semaphore listSlots;
 
-    public MealsController(MealService mealService) {
+    public MealsController(MealService mealService, MealStreamWriter mealStreamWriter,
+                           MealStatsService mealStats,
+                           @Value("${meals.export.max-concurrent:2}") int maxConcurrentExports,
+                           @Value("${meals.list.max-concurrent:4}") int maxConcurrentLists) {
         this.mealService = mealService;
+        this.mealStreamWriter = mealStreamWriter;
+        this.mealStats = mealStats;
+        this.exportSlots = new Semaphore(Math.max(1, maxConcurrentExports));
+        this.listSlots = new Semaphore(Math.max(1, maxConcurrentLists));
     }
 
     // /api/filters  -> { proteins:[], cuisines:[] }
     @GetMapping("/filters")
-    public Map<String, List<String>> getFilters() {
-        return mealService.getFilterOptions();
+    public Map<String, List<String>> getFilters(
+            @RequestHeader(value = HOUSEHOLD_HEADER, required = false) Long household) {
+        return mealService.getFilterOptions(household);
     }
 
     // Optional CRUD (used by your Add/Update later)
+    // Streamed straight from the result set; Accept picks JSON, Smile or CBOR
     @GetMapping("/meals")
-    public List<Meal> getAllMeals() { return mealService.getAllMeals(); }
+    public ResponseEntity<?> getAllMeals(
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = HOUSEHOLD_HEADER, required = false) Long household,
+            WebRequest request) {
+        // Resolve the household before the response is committed, so an unknown one is still a 404
+        mealService.catalogFor(household);
+        MediaType type = mealStreamWriter.negotiate(accept);
+        if (!listSlots.tryAcquire()) {
+            return busy("Too many meal listings running, please retry shortly");
+        }
+        StreamingResponseBody rows = mealStreamWriter.stream(type, sink -> mealService.streamAllMeals(household, sink));
+        return ResponseEntity.ok()
+                .contentType(type)
+                .body(releasing(listSlots, rows, request));
+    }
+
+    // Backups and analytics: /api/meals/export?format=ndjson|csv[&protein=..&cuisine=..&category=..&updatedSince=..]
+    // Rows go from a database cursor to the (gzipped, if accepted) response as they are read
+    @GetMapping("/meals/export")
+    public ResponseEntity<?> exportMeals(
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(required = false) String protein,
+            @RequestParam(required = false) String cuisine,
+            @RequestParam(required = false) String category,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime updatedSince,
+            @RequestHeader(value = HOUSEHOLD_HEADER, required = false) Long household,
+            WebRequest request) {
+        boolean csv;
+        switch (format.toLowerCase()) {
+            case "ndjson" -> csv = false;
+            case "csv" -> csv = true;
+            default -> {
+                return ResponseEntity.badRequest().body(
+                    Map.of("error", "Invalid export format", "message", "Expected ndjson or csv, got '" + format + "'"));
+            }
+        }
+        mealService.catalogFor(household); // 404 for an unknown household before anything is streamed
+
+        if (!exportSlots.tryAcquire()) {
+            return busy("Too many exports running, please retry shortly");
+        }
+        MealService.ExportFilter filter = new MealService.ExportFilter(protein, cuisine, category, updatedSince);
+        StreamingResponseBody rows = csv
+                ? mealStreamWriter.csv(sink -> mealService.exportMeals(household, filter, sink))
+                : mealStreamWriter.ndjson(sink -> mealService.exportMeals(household, filter, sink));
+        StreamingResponseBody body = releasing(exportSlots, rows, request);
+        return ResponseEntity.ok()
+                .contentType(csv ? MealStreamWriter.CSV : MealStreamWriter.NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(csv ? "meals.csv" : "meals.ndjson").build().toString())
+                .body(body);
+    }
+
+    private static ResponseEntity<?> busy(String message) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "30")
+                .body(Map.of("error", "Server busy", "message", message));
+    }
+
+    /**
+     * Wrap a streamed body so its permit is returned exactly once: when the body
+     * finishes, or when the async request completes, times out or fails without
+     * the body ever running (rejected task, client gone before dispatch).
+     */
+    private static StreamingResponseBody releasing(Semaphore slots, StreamingResponseBody body, WebRequest request) {
+        AtomicBoolean held = new AtomicBoolean(true);
+        Runnable release = () -> {
+            if (held.compareAndSet(true, false)) slots.release();
+        };
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(slots, new CallableProcessingInterceptor() {
+            @Override
+            public <T> void afterCompletion(NativeWebRequest r, Callable<T> task) {
+                release.run();
+            }
+        });
+        return out -> {
+            try {
+                body.writeTo(out);
+            } finally {
+                release.run();
+            }
+        };
+    }
 
     @GetMapping("/meals/{id}")
-    public ResponseEntity<Meal> getMeal(@PathVariable Long id) {
-        Meal m = mealService.getMealById(id);
+    public ResponseEntity<Meal> getMeal(
+            @PathVariable Long id,
+            @RequestHeader(value = HOUSEHOLD_HEADER, required = false) Long household) {
+        Meal m = mealService.getMealById(household, id);
         return (m == null) ? ResponseEntity.notFound().build() : ResponseEntity.ok(m);
     }
 
     @PostMapping("/meals")
-    public ResponseEntity<Meal> createMeal(@RequestBody Meal meal) {
-        return ResponseEntity.ok(mealService.addMeal(meal));
+    public ResponseEntity<Meal> createMeal(
+            @RequestBody Meal meal,
+            @RequestHeader(value = HOUSEHOLD_HEADER, required = false) Long household) {
+        return ResponseEntity.ok(mealService.addMeal(household, meal));
+    }
+
+    // Bulk add, e.g. a family importing its recipe box
+    @PostMapping("/meals/import")
+    public ResponseEntity<?> importMeals(
+            @RequestBody List<Meal> meals,
+            @RequestHeader(value = HOUSEHOLD_HEADER, required = false) Long household) {
+        return ResponseEntity.ok(Map.of("imported", mealService.importMeals(household, meals)));
     }
 
     @PutMapping("/meals/{id}")
-    public ResponseEntity<Meal> updateMeal(@PathVariable Long id, @RequestBody Meal meal) {
+    public ResponseEntity<Meal> updateMeal(
+            @PathVariable Long id,
+            @RequestBody Meal meal,
+            @RequestHeader(value = HOUSEHOLD_HEADER, required = false) Long household) {
         meal.setId(id);
-        return ResponseEntity.ok(mealService.updateMeal(meal));
+        Meal updated = mealService.updateMeal(household, meal);
+        return (updated == null) ? ResponseEntity.notFound().build() : ResponseEntity.ok(updated);
+    }
+
+    // /api/ingredients -> ingredient names used by the meals this household can see, sorted
+    @GetMapping("/ingredients")
+    public List<String> getIngredients(
+            @RequestHeader(value = HOUSEHOLD_HEADER, required = false) Long household) {
+        return mealService.getIngredientNames(household);
+    }
+
+    @GetMapping("/meals/{id}/ingredients")
+    public ResponseEntity<List<MealIngredient>> getMealIngredients(
+            @PathVariable Long id,
+            @RequestHeader(value = HOUSEHOLD_HEADER, required = false) Long household) {
+        if (!mealService.isKnownMeal(household, id)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(mealService.getMealIngredients(household, id));
+    }
+
+    // Replaces the meal's whole ingredient list; unknown ingredient names are created
+    @PutMapping("/meals/{id}/ingredients")
+    public ResponseEntity<?> setMealIngredients(
+            @PathVariable Long id,
+            @RequestBody List<MealIngredient> ingredients,
+            @RequestHeader(value = HOUSEHOLD_HEADER, required = false) Long household) {
+        try {
+            if (!mealService.setMealIngredients(household, id, ingredients)) {
+                return ResponseEntity.notFound().build();
+            }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(
+                Map.of("error", "Invalid ingredients", "message", e.getMessage()));
+        }
+        return ResponseEntity.ok(mealService.getMealIngredients(household, id));
+    }
+
+    // Alternatives to swap in for one day of a menu:
+    // /api/meals/{id}/similar?k=5&menu=4,9,12,... (menu = the week's meal ids in day order)
+    @GetMapping("/meals/{id}/similar")
+    public ResponseEntity<?> similarMeals(
+            @PathVariable Long id,
+            @RequestParam(defaultValue = "5") int k,
+            @RequestParam(name = "menu", required = false) List<Long> menu,
+            @RequestParam(defaultValue = "true") boolean sameProtein,
+            @RequestHeader(value = HOUSEHOLD_HEADER, required = false) Long household) {
+        if (k < 1 || k > MAX_SIMILAR) {
+            return ResponseEntity.badRequest().body(
+                Map.of("error", "Invalid similar request", "message", "k must be between 1 and " + MAX_SIMILAR));
+        }
+        List<Meal> similar = mealService.similarMeals(household, id, menu, k, sameProtein);
+        return (similar == null) ? ResponseEntity.notFound().build() : ResponseEntity.ok(similar);
+    }
+
+    // Accept / skip / swap signal from the menu UI; counted in memory, flushed in batches
+    @PostMapping("/meals/{id}/feedback")
+    public ResponseEntity<?> feedback(
+            @PathVariable Long id,
+            @RequestBody MealFeedback feedback,
+            @RequestHeader(value = HOUSEHOLD_HEADER, required = false) Long household) {
+        MealStatsService.Event event;
+        try {
+            event = MealStatsService.Event.parse(feedback.getEvent());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(
+                Map.of("error", "Invalid feedback", "message", e.getMessage()));
+        }
+        if (!mealService.isKnownMeal(household, id)) {
+            return ResponseEntity.notFound().build();
+        }
+        mealStats.record(household, id, event);
+        return ResponseEntity.accepted().build();
     }
 
     @DeleteMapping("/meals/{id}")
-    public ResponseEntity<Void> deleteMeal(@PathVariable Long id) {
-        mealService.deleteMeal(id);
+    public ResponseEntity<Void> deleteMeal(
+            @PathVariable Long id,
+            @RequestHeader(value = HOUSEHOLD_HEADER, required = false) Long household) {
+        mealService.deleteMeal(household, id);
         return ResponseEntity.noContent().build();
     }
+
+    @ExceptionHandler(TenantCatalogs.UnknownHouseholdException.class)
+    public ResponseEntity<?> unknownHousehold(TenantCatalogs.UnknownHouseholdException e) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(
+            Map.of("error", "Unknown household", "message", e.getMessage()));
+    }
 }
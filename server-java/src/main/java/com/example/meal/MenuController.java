@@ -1,14 +1,33 @@
 package com.example.meal;
 
 import com.example.meal.dto.MenuGenerateRequest;
+import com.example.meal.dto.MenuResponse;
+import com.example.meal.service.CatalogView;
+import com.example.meal.service.ConcurrencyLimiter;
+import com.example.meal.service.IngredientIndex;
 import com.example.meal.service.MealService;
+import com.example.meal.service.MenuCache;
+import com.example.meal.service.MenuPool;
+import com.example.meal.service.TenantCatalogs;
+import com.example.meal.service.WeatherService;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
  * REST API endpoints for menu generation.
@@ -19,31 +38,103 @@ import java.util.Map;
 public class MenuController {
 
     private static final Logger log = LoggerFactory.getLogger(MenuController.class);
+    // Response header carrying the seed used, so any menu can be replayed or shared
+    static final String SEED_HEADER = "X-Menu-Seed";
+    // Longest menu either generate endpoint will build (two weeks)
+    static final int MAX_DAYS = 14;
+
     private final MealService mealService;
+    private final MenuCache menuCache;
+    private final MenuPool menuPool;
+    private final ConcurrencyLimiter limiter;
+    private final WeatherService weatherService;
+
+    // How long proxies may serve a shared menu link before revalidating the ETag
+    @Value("${menu.cache.max-age-seconds:300}")
+    private long maxAgeSeconds;
+
+    // Hint sent with 503s when the generate bulkhead is full
+    @Value("${limits.generate.retry-after-seconds:1}")
+    private long retryAfterSeconds;
 
-    public MenuController(MealService mealService) {
+    public MenuController(MealService mealService, MenuCache menuCache, MenuPool menuPool,
+                          @Qualifier("generateLimiter") ConcurrencyLimiter limiter,
+                          WeatherService weatherService) {
         this.mealService = mealService;
+        this.menuCache = menuCache;
+        this.menuPool = menuPool;
+        this.limiter = limiter;
+        this.weatherService = weatherService;
     }
 
     // Generate a menu based on user preferences
     @PostMapping("/generate")
-    public ResponseEntity<?> generate(@RequestBody MenuGenerateRequest req) {
+    public ResponseEntity<?> generate(
+            @RequestBody MenuGenerateRequest req,
+            @RequestHeader(value = MealsController.HOUSEHOLD_HEADER, required = false) Long household) {
         log.info("=== MENU GENERATE REQUEST ===");
         log.info("Protein Distribution: {}", req.getProteinDistribution());
         log.info("Days: {}", req.getDays());
+        log.info("Seed: {}", req.getSeed());
+        log.info("Weighted: {}", req.getWeighted());
+        log.info("Household: {}", household);
 
         int days = (req.getDays() == null ? 7 : req.getDays());
+        if (days < 1 || days > MAX_DAYS) {
+            return invalidDays(days);
+        }
+        boolean weighted = Boolean.TRUE.equals(req.getWeighted());
+        boolean withShoppingList = Boolean.TRUE.equals(req.getShoppingList());
+        IngredientIndex.Rank pantryRank;
+        double[] location;
+        try {
+            pantryRank = IngredientIndex.Rank.parse(req.getPantryRank());
+            location = weatherService.locate(req.getLat(), req.getLon(), req.getPostalCode());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(
+                Map.of("error", "Invalid menu request", "message", e.getMessage()));
+        }
 
+        ConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+        if (permit == null) {
+            return busy();
+        }
         try {
-            // Let the service handle the complex menu generation logic
-            List<Meal> result = mealService.generateMenu(
-                    req.getProteinDistribution(),
-                    null, // cuisines not implemented yet
-                    days
-            );
+            // The client asks for this forecast next; fetch it while the menu is generated
+            weatherService.prefetch(days, parseDate(req.getStartDate()), location);
+            CatalogView catalog = mealService.catalogFor(household);
+            long statsEpoch = mealService.getStatsEpoch(catalog);
+            IngredientIndex.Pantry pantry = mealService.pantryFor(household, req.getPantry(), pantryRank);
+            MenuCache.Key key;
+            List<Meal> result;
 
-            log.info("Generated {} meals", result.size());
-            return ResponseEntity.ok(result);
+            // No seed asked for: any menu for this distribution will do, so use a ready-made one if there is one
+            MenuPool.Prepared ready = (req.getSeed() == null && pantry == null)
+                    ? menuPool.take(MenuCache.Key.of(req.getProteinDistribution(), days, 0, catalog,
+                            weighted, statsEpoch))
+                    : null;
+            if (ready != null) {
+                key = ready.key();
+                // Cache it too, so the seed link it returns is served without regenerating
+                result = menuCache.get(key, ready::menu);
+            } else {
+                long seed = (req.getSeed() == null ? ThreadLocalRandom.current().nextLong() : req.getSeed());
+                key = MenuCache.Key.of(req.getProteinDistribution(), days, seed, catalog, weighted, statsEpoch, pantry);
+                result = generateCached(catalog, req.getProteinDistribution(), key, pantry);
+                if (req.getSeed() == null && pantry == null) {
+                    menuPool.recordMiss(key, req.getProteinDistribution());
+                }
+            }
+
+            log.info("Generated {} meals{}", result.size(), ready != null ? " (pre-generated)" : "");
+            return ResponseEntity.ok()
+                    .header(SEED_HEADER, Long.toString(key.seed()))
+                    .varyBy(HttpHeaders.ACCEPT, MealsController.HOUSEHOLD_HEADER)
+                    .eTag(etag(key, withShoppingList))
+                    .cacheControl(CacheControl.noCache())
+                    .body(withShoppingList ? new MenuResponse(result, mealService.shoppingList(household, result, pantry)) : result);
+        } catch (TenantCatalogs.UnknownHouseholdException e) {
+            return unknownHousehold(e);
         } catch (IllegalArgumentException e) {
             log.warn("Validation error: {}", e.getMessage());
             // Return a user-friendly error message instead of a generic 500 error
@@ -51,6 +142,130 @@ public class MenuController {
                 Map.of("error", "Too many protein selections",
                        "message", e.getMessage())
             );
+        } finally {
+            permit.release();
+        }
+    }
+
+    // Shareable, proxy-cacheable form of a seeded menu:
+    // GET /api/menu/generate?seed=42&days=7&protein=Chicken:2&protein=Beef:2
+    //     [&weighted=true][&pantry=Rice&pantry=Eggs&pantryRank=missing][&shoppingList=true]
+    @GetMapping("/generate")
+    public ResponseEntity<?> generateShared(
+            @RequestParam long seed,
+            @RequestParam(defaultValue = "7") int days,
+            @RequestParam(name = "protein", required = false) List<String> proteins,
+            @RequestParam(defaultValue = "false") boolean weighted,
+            @RequestParam(name = "pantry", required = false) List<String> pantryItems,
+            @RequestParam(required = false) String pantryRank,
+            @RequestParam(defaultValue = "false") boolean shoppingList,
+            @RequestHeader(value = MealsController.HOUSEHOLD_HEADER, required = false) Long household,
+            WebRequest request
+    ) {
+        if (days < 1 || days > MAX_DAYS) {
+            return invalidDays(days);
+        }
+        ConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+        if (permit == null) {
+            return busy();
+        }
+        try {
+            Map<String, Integer> distribution = parseProteins(proteins);
+            CatalogView catalog = mealService.catalogFor(household);
+            IngredientIndex.Pantry pantry = mealService.pantryFor(household, pantryItems,
+                    IngredientIndex.Rank.parse(pantryRank));
+            MenuCache.Key key = MenuCache.Key.of(distribution, days, seed, catalog,
+                    weighted, mealService.getStatsEpoch(catalog), pantry);
+            String etag = etag(key, shoppingList);
+            if (request.checkNotModified(etag)) {
+                return null; // 304 already written by checkNotModified
+            }
+            List<Meal> result = generateCached(catalog, distribution, key, pantry);
+            return ResponseEntity.ok()
+                    .header(SEED_HEADER, Long.toString(seed))
+                    // Same URL, different bodies per household and per negotiated format (JSON, Smile, CBOR)
+                    .varyBy(HttpHeaders.ACCEPT, MealsController.HOUSEHOLD_HEADER)
+                    .eTag(etag)
+                    .cacheControl(CacheControl.maxAge(maxAgeSeconds, TimeUnit.SECONDS).cachePublic())
+                    .body(shoppingList ? new MenuResponse(result, mealService.shoppingList(household, result, pantry)) : result);
+        } catch (TenantCatalogs.UnknownHouseholdException e) {
+            return unknownHousehold(e);
+        } catch (IllegalArgumentException e) {
+            log.warn("Validation error: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(
+                Map.of("error", "Invalid menu request",
+                       "message", e.getMessage())
+            );
+        } finally {
+            permit.release();
+        }
+    }
+
+    // Shed load fast rather than queue behind requests that are already slow
+    private ResponseEntity<?> busy() {
+        log.warn("Menu generation saturated ({} in flight, limit {}), rejecting",
+                limiter.getInFlight(), limiter.getLimit());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds))
+                .body(Map.of("error", "Server busy",
+                             "message", "Too many menu requests right now, please retry shortly"));
+    }
+
+    private static ResponseEntity<?> invalidDays(int days) {
+        return ResponseEntity.badRequest().body(
+            Map.of("error", "Invalid menu request",
+                   "message", "days must be between 1 and " + MAX_DAYS + ", got " + days));
+    }
+
+    private ResponseEntity<?> unknownHousehold(TenantCatalogs.UnknownHouseholdException e) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(
+            Map.of("error", "Unknown household", "message", e.getMessage()));
+    }
+
+    // The shopping-list form is a different body for the same menu, so it needs its own tag
+    private static String etag(MenuCache.Key key, boolean withShoppingList) {
+        String tag = key.etag();
+        return withShoppingList ? tag.substring(0, tag.length() - 1) + "-list\"" : tag;
+    }
+
+    private List<Meal> generateCached(CatalogView catalog, Map<String, Integer> distribution,
+                                      MenuCache.Key key, IngredientIndex.Pantry pantry) {
+        return menuCache.get(key, () -> mealService.generateMenu(
+                catalog,
+                distribution,
+                null, // cuisines not implemented yet
+                key.days(),
+                key.seed(),
+                key.weighted(),
+                pantry
+        ));
+    }
+
+    // Best effort: the start date only steers the weather prefetch
+    private static LocalDate parseDate(String date) {
+        if (date == null || date.isBlank()) return null;
+        try {
+            return LocalDate.parse(date.trim());
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    // "Chicken:2" -> {Chicken=2}
+    private static Map<String, Integer> parseProteins(List<String> proteins) {
+        Map<String, Integer> out = new LinkedHashMap<>();
+        if (proteins == null) return out;
+        for (String p : proteins) {
+            int idx = p.lastIndexOf(':');
+            if (idx <= 0) {
+                throw new IllegalArgumentException("Expected protein as Name:count, got '" + p + "'");
+            }
+            try {
+                out.merge(p.substring(0, idx), Integer.parseInt(p.substring(idx + 1).trim()), Integer::sum);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid count in '" + p + "'");
+            }
         }
+        return out;
     }
 }
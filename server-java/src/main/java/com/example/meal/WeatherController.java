@@ -1,33 +1,77 @@
 package com.example.meal;
 
-import com.example.meal.dto.WeatherDay;
+import com.example.meal.service.ConcurrencyLimiter;
 import com.example.meal.service.WeatherService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDate;
-import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/weather")
 @CrossOrigin(origins = {"http://localhost:3000"})
 public class WeatherController {
 
+    // Set on responses served from cache/stub because the endpoint was saturated
+    static final String DEGRADED_HEADER = "X-Weather-Degraded";
+
     private final WeatherService weatherService;
+    private final ConcurrencyLimiter limiter;
+    private final Counter degraded;
 
     @Autowired
-    public WeatherController(WeatherService weatherService) {
+    public WeatherController(WeatherService weatherService,
+                             @Qualifier("weatherLimiter") ConcurrencyLimiter limiter,
+                             MeterRegistry meters) {
         this.weatherService = weatherService;
+        this.limiter = limiter;
+        this.degraded = Counter.builder("weather.degraded")
+                .description("Forecasts served from cache or stub instead of Open-Meteo")
+                .register(meters);
     }
 
-    // GET /api/weather/forecast?days=7&startDate=2025-09-02
+    // GET /api/weather/forecast?days=7&startDate=2025-09-02[&lat=..&lon=..|&postalCode=95014]
     @GetMapping("/forecast")
-    public List<WeatherDay> forecast(
+    public ResponseEntity<?> forecast(
             @RequestParam(defaultValue = "7") int days,
             @RequestParam(required = false)
-            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate
+            @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+            @RequestParam(required = false) Double lat,
+            @RequestParam(required = false) Double lon,
+            @RequestParam(required = false) String postalCode
     ) {
-        return weatherService.getDailyForecast(days, startDate);
+        // Explicit coordinates win; an unknown postal code is rejected rather than
+        // silently answered with the configured location's forecast
+        double[] location;
+        try {
+            location = weatherService.locate(lat, lon, postalCode);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(
+                Map.of("error", "Unknown location", "message", e.getMessage()));
+        }
+        if (location != null) {
+            lat = location[0];
+            lon = location[1];
+        }
+
+        ConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+        if (permit == null) {
+            // Weather is decoration: degrade instead of queuing or failing
+            degraded.increment();
+            return ResponseEntity.ok()
+                    .header(DEGRADED_HEADER, "true")
+                    .body(weatherService.getCachedOrStub(days, startDate, lat, lon));
+        }
+        try {
+            return ResponseEntity.ok(weatherService.getDailyForecast(days, startDate, lat, lon));
+        } finally {
+            permit.release();
+        }
     }
 }
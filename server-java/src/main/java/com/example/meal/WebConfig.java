@@ -0,0 +1,50 @@
+package com.example.meal;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.Compression;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.time.Duration;
+
+@Configuration
+public class WebConfig {
+
+  // Responses smaller than this are sent as-is; gzip overhead isn't worth it
+  @Value("${web.compression.min-response-size:2KB}")
+  private DataSize minResponseSize;
+
+  // Streamed responses (meal lists, exports) run async; the container default
+  // of 30s would cut off a large export part way through
+  @Value("${web.async.request-timeout:30m}")
+  private Duration asyncRequestTimeout;
+
+  @Bean
+  public WebServerFactoryCustomizer<TomcatServletWebServerFactory> compressionCustomizer() {
+    return factory -> {
+      Compression compression = new Compression();
+      compression.setEnabled(true);
+      compression.setMinResponseSize(minResponseSize);
+      // Only text formats; Smile/CBOR are already compact
+      compression.setMimeTypes(new String[] {
+          "application/json", "application/x-ndjson", "text/csv", "text/plain", "text/html"
+      });
+      factory.setCompression(compression);
+    };
+  }
+
+  @Bean
+  public WebMvcConfigurer asyncTimeoutConfigurer() {
+    return new WebMvcConfigurer() {
+      @Override
+      public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setDefaultTimeout(asyncRequestTimeout.toMillis());
+      }
+    };
+  }
+}
@@ -0,0 +1,16 @@
+package com.example.meal.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class MealFeedback {
+    @JsonProperty("event")
+    private String event;                              // "accept" | "skip" | "swap"
+
+    public String getEvent() { return event; }
+    public void setEvent(String event) { this.event = event; }
+
+    @Override
+    public String toString() {
+        return "MealFeedback{event='" + event + "'}";
+    }
+}
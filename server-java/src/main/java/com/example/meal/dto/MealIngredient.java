@@ -0,0 +1,35 @@
+package com.example.meal.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.math.BigDecimal;
+
+public class MealIngredient {
+    @JsonProperty("name")
+    private String name;                               // "Chicken thighs"
+    @JsonProperty("quantity")
+    private BigDecimal quantity;                       // optional; 2.5
+    @JsonProperty("unit")
+    private String unit;                               // optional; "lb"
+
+    public MealIngredient() {}
+
+    public MealIngredient(String name, BigDecimal quantity, String unit) {
+        this.name = name;
+        this.quantity = quantity;
+        this.unit = unit;
+    }
+
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+
+    public BigDecimal getQuantity() { return quantity; }
+    public void setQuantity(BigDecimal quantity) { this.quantity = quantity; }
+
+    public String getUnit() { return unit; }
+    public void setUnit(String unit) { this.unit = unit; }
+
+    @Override
+    public String toString() {
+        return "MealIngredient{name='" + name + "', quantity=" + quantity + ", unit='" + unit + "'}";
+    }
+}
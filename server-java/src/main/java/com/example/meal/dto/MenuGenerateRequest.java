@@ -1,6 +1,7 @@
 package com.example.meal.dto;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.List;
 import java.util.Map;
 
 public class MenuGenerateRequest {
@@ -10,6 +11,22 @@ public class MenuGenerateRequest {
     private Integer days;                              // 7
     @JsonProperty("startDate")
     private String startDate;                          // "YYYY-MM-DD" (client uses it; service ignores)
+    @JsonProperty("seed")
+    private Long seed;                                 // optional; same seed + catalog version -> same menu
+    @JsonProperty("weighted")
+    private Boolean weighted;                          // favor meals with good feedback (default false)
+    @JsonProperty("pantry")
+    private List<String> pantry;                       // optional ingredient names on hand
+    @JsonProperty("pantryRank")
+    private String pantryRank;                         // "overlap" (default) | "missing"
+    @JsonProperty("shoppingList")
+    private Boolean shoppingList;                      // respond with {menu, shoppingList} (default false)
+    @JsonProperty("lat")
+    private Double lat;                                // optional forecast location; wins over postalCode
+    @JsonProperty("lon")
+    private Double lon;
+    @JsonProperty("postalCode")
+    private String postalCode;                         // optional; looked up in the bundled postal code table
 
     public Map<String, Integer> getProteinDistribution() { return proteinDistribution; }
     public void setProteinDistribution(Map<String, Integer> proteinDistribution) { this.proteinDistribution = proteinDistribution; }
@@ -20,12 +37,44 @@ public class MenuGenerateRequest {
     public String getStartDate() { return startDate; }
     public void setStartDate(String startDate) { this.startDate = startDate; }
 
+    public Long getSeed() { return seed; }
+    public void setSeed(Long seed) { this.seed = seed; }
+
+    public Boolean getWeighted() { return weighted; }
+    public void setWeighted(Boolean weighted) { this.weighted = weighted; }
+
+    public List<String> getPantry() { return pantry; }
+    public void setPantry(List<String> pantry) { this.pantry = pantry; }
+
+    public String getPantryRank() { return pantryRank; }
+    public void setPantryRank(String pantryRank) { this.pantryRank = pantryRank; }
+
+    public Boolean getShoppingList() { return shoppingList; }
+    public void setShoppingList(Boolean shoppingList) { this.shoppingList = shoppingList; }
+
+    public Double getLat() { return lat; }
+    public void setLat(Double lat) { this.lat = lat; }
+
+    public Double getLon() { return lon; }
+    public void setLon(Double lon) { this.lon = lon; }
+
+    public String getPostalCode() { return postalCode; }
+    public void setPostalCode(String postalCode) { this.postalCode = postalCode; }
+
     @Override
     public String toString() {
         return "MenuGenerateRequest{" +
                 "proteinDistribution=" + proteinDistribution +
                 ", days=" + days +
                 ", startDate='" + startDate + '\'' +
+                ", seed=" + seed +
+                ", weighted=" + weighted +
+                ", pantry=" + pantry +
+                ", pantryRank='" + pantryRank + '\'' +
+                ", shoppingList=" + shoppingList +
+                ", lat=" + lat +
+                ", lon=" + lon +
+                ", postalCode='" + postalCode + '\'' +
                 '}';
     }
 }
\ No newline at end of file
@@ -0,0 +1,26 @@
+package com.example.meal.dto;
+
+import com.example.meal.Meal;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.List;
+
+// Generate response when the client asks for a shopping list alongside the menu
+public class MenuResponse {
+    @JsonProperty("menu")
+    private List<Meal> menu;
+    @JsonProperty("shoppingList")
+    private List<ShoppingItem> shoppingList;
+
+    public MenuResponse() {}
+
+    public MenuResponse(List<Meal> menu, List<ShoppingItem> shoppingList) {
+        this.menu = menu;
+        this.shoppingList = shoppingList;
+    }
+
+    public List<Meal> getMenu() { return menu; }
+    public void setMenu(List<Meal> menu) { this.menu = menu; }
+
+    public List<ShoppingItem> getShoppingList() { return shoppingList; }
+    public void setShoppingList(List<ShoppingItem> shoppingList) { this.shoppingList = shoppingList; }
+}
@@ -0,0 +1,42 @@
+package com.example.meal.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.math.BigDecimal;
+import java.util.List;
+
+public class ShoppingItem {
+    @JsonProperty("name")
+    private String name;
+    @JsonProperty("quantity")
+    private BigDecimal quantity;                       // summed across meals; null if any meal left it blank
+    @JsonProperty("unit")
+    private String unit;
+    @JsonProperty("meals")
+    private List<String> meals;                        // names of the menu's meals that need it
+
+    public ShoppingItem() {}
+
+    public ShoppingItem(String name, BigDecimal quantity, String unit, List<String> meals) {
+        this.name = name;
+        this.quantity = quantity;
+        this.unit = unit;
+        this.meals = meals;
+    }
+
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+
+    public BigDecimal getQuantity() { return quantity; }
+    public void setQuantity(BigDecimal quantity) { this.quantity = quantity; }
+
+    public String getUnit() { return unit; }
+    public void setUnit(String unit) { this.unit = unit; }
+
+    public List<String> getMeals() { return meals; }
+    public void setMeals(List<String> meals) { this.meals = meals; }
+
+    @Override
+    public String toString() {
+        return "ShoppingItem{name='" + name + "', quantity=" + quantity + ", unit='" + unit + "', meals=" + meals + "}";
+    }
+}
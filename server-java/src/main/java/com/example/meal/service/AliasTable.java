@@ -0,0 +1,50 @@
+package com.example.meal.service;
+
+import java.util.Random;
+
+/**
+ * Walker/Vose alias table: O(n) to build from a weight vector, then each
+ * weighted draw is O(1) (one uniform index plus one biased coin).
+ */
+public final class AliasTable {
+
+    private final double[] prob;
+    private final int[] alias;
+
+    public AliasTable(double[] weights) {
+        int n = weights.length;
+        if (n == 0) throw new IllegalArgumentException("No weights");
+        prob = new double[n];
+        alias = new int[n];
+
+        double sum = 0;
+        for (double w : weights) sum += Math.max(0, w);
+        double[] scaled = new double[n];
+        for (int i = 0; i < n; i++) {
+            scaled[i] = (sum > 0) ? Math.max(0, weights[i]) * n / sum : 1.0;
+        }
+
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int ns = 0, nl = 0;
+        for (int i = 0; i < n; i++) {
+            if (scaled[i] < 1.0) small[ns++] = i; else large[nl++] = i;
+        }
+        while (ns > 0 && nl > 0) {
+            int s = small[--ns];
+            int l = large[--nl];
+            prob[s] = scaled[s];
+            alias[s] = l;
+            scaled[l] = (scaled[l] + scaled[s]) - 1.0;
+            if (scaled[l] < 1.0) small[ns++] = l; else large[nl++] = l;
+        }
+        // Leftovers are 1.0 up to rounding error
+        while (nl > 0) prob[large[--nl]] = 1.0;
+        while (ns > 0) prob[small[--ns]] = 1.0;
+    }
+
+    public int sample(Random rnd) {
+        int i = rnd.nextInt(prob.length);
+        return rnd.nextDouble() < prob[i] ? i : alias[i];
+    }
+}
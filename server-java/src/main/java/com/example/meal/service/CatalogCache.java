@@ -0,0 +1,250 @@
+package com.example.meal.service;
+
+import com.example.meal.Meal;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.*;
+
+/**
+ * Node-local, read-only copy of the shared base library (meals with no
+ * household). Households' own recipes are indexed separately by
+ * {@link TenantCatalogs} and overlaid on top of this snapshot.
+ *
+ * Every base-library write in {@link MealService} bumps the shared catalog_version row in the
+ * same transaction. Each node polls that row; when it moves, only meals whose
+ * updated_at is past the last sync are re-read. Deletions, and inserts whose
+ * transaction outlasted the lookback window, are caught by comparing the count
+ * and sum of ids, falling back to an id-only scan when they differ. All reads
+ * for one sync share a single consistent snapshot, so a version never comes
+ * with rows from a later one.
+ */
+@Component
+public class CatalogCache {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogCache.class);
+
+    private static final int ID_BATCH_SIZE = 1000;
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate snapshotReads;
+    private final SimilarMeals similar;
+    private final BeanPropertyRowMapper<Meal> mealRowMapper = new BeanPropertyRowMapper<>(Meal.class);
+
+    // Re-read rows updated slightly before the last sync; covers transactions that
+    // stamped updated_at before our previous poll but committed after it
+    @Value("${catalog.sync.lookback-seconds:5}")
+    private long lookbackSeconds;
+
+    private volatile Snapshot snapshot;
+    // Wall-clock time at which this node last confirmed it matched the database
+    private volatile long lastVerifiedMillis = System.currentTimeMillis();
+
+    public CatalogCache(JdbcTemplate jdbc, PlatformTransactionManager transactions, MeterRegistry meters,
+                        SimilarMeals similar) {
+        this.jdbc = jdbc;
+        this.snapshotReads = snapshotReads(transactions);
+        this.similar = similar;
+        Gauge.builder("catalog.staleness.seconds", this, c -> c.stalenessMillis() / 1000.0)
+                .description("Time since this node last confirmed its catalog matches the database")
+                .register(meters);
+        Gauge.builder("catalog.version", this, c -> c.snapshot == null ? -1 : c.snapshot.version)
+                .description("Catalog version loaded on this node")
+                .register(meters);
+    }
+
+    /**
+     * Read-only REPEATABLE READ transactions: InnoDB serves every statement in one
+     * from the same consistent snapshot, so a version row and the meal rows read
+     * alongside it always belong together.
+     */
+    static TransactionTemplate snapshotReads(PlatformTransactionManager transactions) {
+        TransactionTemplate t = new TransactionTemplate(transactions);
+        t.setReadOnly(true);
+        t.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        return t;
+    }
+
+    /** Current snapshot, loading it on first use. */
+    public Snapshot snapshot() {
+        Snapshot s = snapshot;
+        if (s == null) {
+            refresh();
+            s = snapshot;
+        }
+        return s;
+    }
+
+    public long version() {
+        return snapshot().version;
+    }
+
+    public long stalenessMillis() {
+        return System.currentTimeMillis() - lastVerifiedMillis;
+    }
+
+    @Scheduled(fixedDelayString = "${catalog.sync.poll-interval-ms:2000}")
+    public void poll() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            log.warn("Catalog poll failed: {}", e.toString());
+        }
+    }
+
+    /** Bring this node up to the database's catalog version. Cheap when nothing changed. */
+    public synchronized void refresh() {
+        Snapshot before = snapshot;
+        snapshotReads.executeWithoutResult(tx -> sync());
+        lastVerifiedMillis = System.currentTimeMillis();
+        // First load (the startup poll) or a new version: index it ahead of /similar requests
+        if (snapshot != before) similar.prepare(snapshot);
+    }
+
+    // Runs inside one snapshot transaction
+    private void sync() {
+        Map<String, Object> head = jdbc.queryForMap(
+                "SELECT version, NOW() AS db_now FROM catalog_version WHERE id = 1");
+        long remoteVersion = ((Number) head.get("version")).longValue();
+        Timestamp dbNow = (Timestamp) head.get("db_now");
+
+        Snapshot current = snapshot;
+        if (current == null) {
+            snapshot = fullLoad(remoteVersion, dbNow);
+            log.info("Catalog loaded: version {}, {} meals", remoteVersion, snapshot.size());
+        } else if (remoteVersion != current.version) {
+            snapshot = incrementalLoad(current, remoteVersion, dbNow);
+            log.info("Catalog synced: version {} -> {}, {} meals",
+                    current.version, remoteVersion, snapshot.size());
+        }
+    }
+
+    private Snapshot fullLoad(long version, Timestamp dbNow) {
+        TreeMap<Long, Meal> byId = new TreeMap<>();
+        jdbc.query("""
+                SELECT id, name, protein, cuisine,
+                       cook_time AS cookTime, cook_method AS cookMethod, source, category
+                  FROM meals
+                 WHERE household_id IS NULL
+                """, (RowCallbackHandler) rs -> {
+            Meal m = mealRowMapper.mapRow(rs, rs.getRow());
+            byId.put(m.getId(), m);
+        });
+        return new Snapshot(version, dbNow, byId);
+    }
+
+    private Snapshot incrementalLoad(Snapshot current, long version, Timestamp dbNow) {
+        TreeMap<Long, Meal> byId = new TreeMap<>(current.byId);
+        Timestamp since = new Timestamp(current.syncedAt.getTime() - lookbackSeconds * 1000);
+
+        List<Meal> changed = jdbc.query("""
+                SELECT id, name, protein, cuisine,
+                       cook_time AS cookTime, cook_method AS cookMethod, source, category
+                  FROM meals
+                 WHERE household_id IS NULL AND updated_at >= ?
+                """, mealRowMapper, since);
+        for (Meal m : changed) {
+            byId.put(m.getId(), m);
+        }
+
+        // Deleted rows, or rows committed too late for the lookback window, change
+        // the count or sum of ids; reconcile by id when they do
+        Map<String, Object> ids = jdbc.queryForMap(
+                "SELECT COUNT(*) AS n, COALESCE(SUM(id), 0) AS id_sum FROM meals WHERE household_id IS NULL");
+        long localSum = 0;
+        for (Long id : byId.keySet()) localSum += id;
+        if (((Number) ids.get("n")).longValue() != byId.size()
+                || ((Number) ids.get("id_sum")).longValue() != localSum) {
+            Set<Long> live = new HashSet<>(jdbc.queryForList(
+                    "SELECT id FROM meals WHERE household_id IS NULL", Long.class));
+            byId.keySet().retainAll(live);
+            live.removeAll(byId.keySet());
+            if (!live.isEmpty()) {
+                log.info("Catalog sync: fetching {} rows missed by the updated_at window", live.size());
+                loadByIds(live, byId);
+            }
+        }
+        log.debug("Catalog delta: {} changed rows since {}", changed.size(), since);
+        return new Snapshot(version, dbNow, byId);
+    }
+
+    private void loadByIds(Collection<Long> ids, Map<Long, Meal> into) {
+        List<Long> all = new ArrayList<>(ids);
+        for (int from = 0; from < all.size(); from += ID_BATCH_SIZE) {
+            List<Long> batch = all.subList(from, Math.min(all.size(), from + ID_BATCH_SIZE));
+            String in = String.join(",", Collections.nCopies(batch.size(), "?"));
+            jdbc.query("""
+                    SELECT id, name, protein, cuisine,
+                           cook_time AS cookTime, cook_method AS cookMethod, source, category
+                      FROM meals
+                     WHERE household_id IS NULL AND id IN (%s)
+                    """.formatted(in), (RowCallbackHandler) rs -> {
+                Meal m = mealRowMapper.mapRow(rs, rs.getRow());
+                into.put(m.getId(), m);
+            }, batch.toArray());
+        }
+    }
+
+    /**
+     * Immutable view of the catalog at one version, with the lookups the
+     * generator needs precomputed. Meals are always in id order.
+     */
+    public static final class Snapshot implements CatalogView {
+        private final long version;
+        private final Timestamp syncedAt;
+        private final NavigableMap<Long, Meal> byId;
+        private final List<Meal> meals;
+        private final Map<String, List<Meal>> byProtein;
+        private final List<String> proteins;
+
+        Snapshot(long version, Timestamp syncedAt, TreeMap<Long, Meal> byId) {
+            this.version = version;
+            this.syncedAt = syncedAt;
+            this.byId = Collections.unmodifiableNavigableMap(byId);
+            this.meals = List.copyOf(byId.values());
+
+            Map<String, List<Meal>> grouped = new HashMap<>();
+            SortedSet<String> names = new TreeSet<>();
+            for (Meal m : meals) {
+                String p = m.getProtein() == null ? "" : m.getProtein().trim();
+                grouped.computeIfAbsent(p.toLowerCase(Locale.ROOT), k -> new ArrayList<>()).add(m);
+                if (!p.isEmpty()) names.add(p);
+            }
+            grouped.replaceAll((k, v) -> List.copyOf(v));
+            this.byProtein = grouped;
+            this.proteins = List.copyOf(names);
+        }
+
+        @Override public Long household() { return null; }
+        @Override public long version() { return version; }
+        @Override public long householdVersion() { return 0; }
+        @Override public int size() { return meals.size(); }
+        @Override public List<Meal> meals() { return meals; }
+        @Override public Meal get(long id) { return byId.get(id); }
+
+        /**
+         * Meals with this protein, in id order. Matching ignores case and
+         * surrounding whitespace, like the MySQL collation the old query relied on.
+         */
+        @Override
+        public List<Meal> byProtein(String protein) {
+            if (protein == null) return List.of();
+            return byProtein.getOrDefault(protein.trim().toLowerCase(Locale.ROOT), List.of());
+        }
+
+        /** Distinct trimmed, non-empty protein values, sorted. */
+        @Override public List<String> proteins() { return proteins; }
+    }
+}
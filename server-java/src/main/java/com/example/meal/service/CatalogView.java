@@ -0,0 +1,33 @@
+package com.example.meal.service;
+
+import com.example.meal.Meal;
+
+import java.util.List;
+
+/**
+ * Read-only catalog as seen by one household: the shared base library, plus
+ * that household's own recipes when there is one. Lists are never modified.
+ */
+public interface CatalogView {
+
+    /** Household id, or null for the shared base library alone. */
+    Long household();
+
+    /** Version of the shared base library. */
+    long version();
+
+    /** Version of the household's own recipes; 0 for the base library. */
+    long householdVersion();
+
+    int size();
+
+    List<Meal> meals();
+
+    Meal get(long id);
+
+    /** Meals with this protein, ignoring case and surrounding whitespace. */
+    List<Meal> byProtein(String protein);
+
+    /** Distinct trimmed, non-empty protein values, sorted. */
+    List<String> proteins();
+}
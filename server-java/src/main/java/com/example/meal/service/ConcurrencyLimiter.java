@@ -0,0 +1,145 @@
+package com.example.meal.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bulkhead for one endpoint: caps in-flight requests and rejects the rest
+ * immediately instead of letting them queue on Tomcat threads.
+ *
+ * The cap adapts to latency (AIMD against a baseline RTT, as in TCP Vegas).
+ * Samples are averaged over short windows; the baseline is a low percentile of
+ * recent window averages, so one lucky fast request (a cache hit next to slow
+ * misses, say) can't drag it down, and a backend that is permanently slower
+ * becomes the new baseline as old windows roll off. In windows where the limit
+ * was in use, the limit grows by about one per full window of requests while
+ * the average stays within {@code tolerance} times the baseline, and is cut by
+ * 10% once requests are queueing and slow down.
+ */
+public class ConcurrencyLimiter {
+
+    private static final double BACKOFF = 0.9;
+    // A window closes after this many samples, or after a second with at least the minimum
+    static final int WINDOW_SAMPLES = 50;
+    private static final int MIN_WINDOW_SAMPLES = 10;
+    private static final long WINDOW_NANOS = 1_000_000_000L;
+    // Baseline: 10th percentile of the last 100 window averages
+    private static final int BASELINE_WINDOWS = 100;
+
+    private final int minLimit;
+    private final int maxLimit;
+    // How much slower than baseline we tolerate before shrinking the limit
+    private final double tolerance;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Counter accepted;
+    private final Counter rejected;
+
+    private double limit;
+    // Current window
+    private int windowCount;
+    private double windowSum;
+    private int windowMaxInFlight;
+    private long windowStart = System.nanoTime();
+    // Averages of recent windows, overwritten oldest first
+    private final double[] recent = new double[BASELINE_WINDOWS];
+    private int recentCount;
+    private int recentNext;
+
+    public ConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit,
+                              double tolerance, MeterRegistry meters) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.tolerance = Math.max(1.0, tolerance);
+        this.limit = Math.max(this.minLimit, Math.min(this.maxLimit, initialLimit));
+
+        Gauge.builder("limiter.limit", this, ConcurrencyLimiter::getLimit)
+                .tag("endpoint", name).description("Current adaptive concurrency limit").register(meters);
+        Gauge.builder("limiter.inflight", inFlight, AtomicInteger::get)
+                .tag("endpoint", name).description("Requests currently admitted").register(meters);
+        this.accepted = Counter.builder("limiter.accepted").tag("endpoint", name).register(meters);
+        this.rejected = Counter.builder("limiter.rejected").tag("endpoint", name)
+                .description("Requests shed because the limit was reached").register(meters);
+    }
+
+    /** Admit one request, or return null right away if the endpoint is saturated. */
+    public Permit tryAcquire() {
+        int cap = getLimit();
+        while (true) {
+            int current = inFlight.get();
+            if (current >= cap) {
+                rejected.increment();
+                return null;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                accepted.increment();
+                return new Permit(System.nanoTime(), current + 1);
+            }
+        }
+    }
+
+    public int getInFlight() { return inFlight.get(); }
+    public synchronized int getLimit() { return (int) limit; }
+
+    // Package-private so tests can feed RTTs directly
+    synchronized void onSample(long rttNanos, int inFlightAtStart) {
+        windowSum += Math.max(1, rttNanos);
+        windowCount++;
+        windowMaxInFlight = Math.max(windowMaxInFlight, inFlightAtStart);
+        long now = System.nanoTime();
+        if (windowCount < WINDOW_SAMPLES
+                && (windowCount < MIN_WINDOW_SAMPLES || now - windowStart < WINDOW_NANOS)) {
+            return;
+        }
+
+        double average = windowSum / windowCount;
+        recent[recentNext] = average;
+        recentNext = (recentNext + 1) % BASELINE_WINDOWS;
+        recentCount = Math.min(BASELINE_WINDOWS, recentCount + 1);
+
+        // Only adjust when the limit is actually being used; with few requests in
+        // flight, slow responses aren't queueing we could relieve by shedding
+        if (windowMaxInFlight >= limit / 2) {
+            if (average > tolerance * baseline()) {
+                // Queueing: back off once for the whole window
+                limit = Math.max(minLimit, limit * BACKOFF);
+            } else {
+                limit = Math.min(maxLimit, limit + windowCount / limit);
+            }
+        }
+
+        windowCount = 0;
+        windowSum = 0;
+        windowMaxInFlight = 0;
+        windowStart = now;
+    }
+
+    private double baseline() {
+        double[] sorted = Arrays.copyOf(recent, recentCount);
+        Arrays.sort(sorted);
+        return sorted[recentCount / 10];
+    }
+
+    /** An admitted request. Release exactly once, in a finally block. */
+    public final class Permit {
+        private final long startNanos;
+        private final int inFlightAtStart;
+        private boolean released;
+
+        private Permit(long startNanos, int inFlightAtStart) {
+            this.startNanos = startNanos;
+            this.inFlightAtStart = inFlightAtStart;
+        }
+
+        public void release() {
+            if (released) return;
+            released = true;
+            inFlight.decrementAndGet();
+            onSample(System.nanoTime() - startNanos, inFlightAtStart);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.meal.service;
+
+/**
+ * Minimal geohash encoder/decoder. Used to quantize coordinates so that
+ * nearby users share one cached forecast.
+ */
+public final class Geohash {
+
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+    private Geohash() {}
+
+    /** Encode to {@code precision} base32 chars (5 is a cell of roughly 4.9 x 4.9 km). */
+    public static String encode(double lat, double lon, int precision) {
+        double[] latRange = {-90, 90};
+        double[] lonRange = {-180, 180};
+        StringBuilder out = new StringBuilder(precision);
+        boolean evenBit = true; // even bits refine longitude
+        int bit = 0, ch = 0;
+        while (out.length() < precision) {
+            double[] range = evenBit ? lonRange : latRange;
+            double value = evenBit ? lon : lat;
+            double mid = (range[0] + range[1]) / 2;
+            if (value >= mid) {
+                ch = (ch << 1) | 1;
+                range[0] = mid;
+            } else {
+                ch = ch << 1;
+                range[1] = mid;
+            }
+            evenBit = !evenBit;
+            if (++bit == 5) {
+                out.append(BASE32.charAt(ch));
+                bit = 0;
+                ch = 0;
+            }
+        }
+        return out.toString();
+    }
+
+    /** Center of the cell as {lat, lon}. */
+    public static double[] center(String hash) {
+        double[] latRange = {-90, 90};
+        double[] lonRange = {-180, 180};
+        boolean evenBit = true;
+        for (int i = 0; i < hash.length(); i++) {
+            int cd = BASE32.indexOf(hash.charAt(i));
+            if (cd < 0) throw new IllegalArgumentException("Invalid geohash: " + hash);
+            for (int mask = 16; mask > 0; mask >>= 1) {
+                double[] range = evenBit ? lonRange : latRange;
+                double mid = (range[0] + range[1]) / 2;
+                if ((cd & mask) != 0) range[0] = mid; else range[1] = mid;
+                evenBit = !evenBit;
+            }
+        }
+        return new double[] {(latRange[0] + latRange[1]) / 2, (lonRange[0] + lonRange[1]) / 2};
+    }
+}
@@ -0,0 +1,395 @@
+package com.example.meal.service;
+
+import com.example.meal.Meal;
+import com.example.meal.dto.MealIngredient;
+import com.example.meal.dto.ShoppingItem;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * Node-local index of which ingredients each meal needs, as compressed
+ * bitmaps both ways: ingredient ids per meal, and meals per ingredient.
+ * Pantry matching is |meal AND pantry| (what we have) or |meal ANDNOT pantry|
+ * (what we'd have to buy); both come out of one pass over the pantry
+ * ingredients' meal bitmaps, rather than a bitmap operation per candidate.
+ * A menu's shopping list is the union of its meals' bitmaps minus the pantry.
+ *
+ * The base library's index is versioned by catalog_version row 2 and each
+ * household's own recipes by households.ingredient_version, so one family's
+ * edits only rebuild that family's index. A household sees the base index plus
+ * its own, and only the ingredient names either of them uses. Like
+ * {@link TenantCatalogs}, household indexes are built on first use, rebuilt on
+ * the next use after their version moves (readers keep the previous one while
+ * that runs) and dropped when idle.
+ */
+@Component
+public class IngredientIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(IngredientIndex.class);
+    static final int VERSION_ROW = 2;
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    private final JdbcTemplate jdbc;
+    private volatile Snapshot base;
+    private final Map<Long, Entry> households = new ConcurrentHashMap<>();
+
+    @Value("${tenants.cache.idle-minutes:60}")
+    private long idleMinutes;
+
+    public IngredientIndex(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /** Ingredients as this household sees them; the base library alone when household is null. */
+    public View view(Long household) {
+        Snapshot shared = base();
+        if (household == null) return new View(shared, null);
+        return new View(shared, households.computeIfAbsent(household, Entry::new).index());
+    }
+
+    /** Force a rebuild of this household's index on next use, e.g. right after this node committed a write. */
+    public void invalidate(Long household) {
+        Entry e = households.get(household);
+        if (e != null) e.stale = true;
+    }
+
+    private Snapshot base() {
+        Snapshot s = base;
+        if (s == null) {
+            refresh();
+            s = base;
+        }
+        return s;
+    }
+
+    @Scheduled(fixedDelayString = "${catalog.sync.poll-interval-ms:2000}")
+    public void poll() {
+        try {
+            refresh();
+            evictIdle();
+            checkVersions();
+        } catch (RuntimeException e) {
+            log.warn("Ingredient index poll failed: {}", e.toString());
+        }
+    }
+
+    public synchronized void refresh() {
+        List<Long> rows = jdbc.queryForList(
+                "SELECT version FROM catalog_version WHERE id = ?", Long.class, VERSION_ROW);
+        long version = rows.isEmpty() ? 0 : rows.get(0);
+        Snapshot current = base;
+        if (current != null && current.version == version) return;
+
+        base = load(version, null);
+        log.info("Ingredient index loaded: version {}, {} ingredients, {} meals mapped",
+                version, base.names.size(), base.bits.size());
+    }
+
+    // One query for every resident household; changed ones rebuild lazily on next use
+    private void checkVersions() {
+        List<Long> ids = new ArrayList<>(households.keySet());
+        if (ids.isEmpty()) return;
+        String in = String.join(",", Collections.nCopies(ids.size(), "?"));
+        jdbc.query("SELECT id, ingredient_version FROM households WHERE id IN (" + in + ")",
+                (RowCallbackHandler) rs -> {
+                    Entry e = households.get(rs.getLong(1));
+                    if (e != null) e.remoteVersion = rs.getLong(2);
+                }, ids.toArray());
+    }
+
+    private void evictIdle() {
+        long cutoff = System.nanoTime() - TimeUnit.MINUTES.toNanos(idleMinutes);
+        households.values().removeIf(e -> e.lastAccess - cutoff < 0 && !e.lock.isLocked());
+    }
+
+    // Lines, names and bitmaps for the base library (household null) or one household's meals.
+    // A single statement, so names and lines always agree.
+    private Snapshot load(long version, Long household) {
+        Map<Integer, String> names = new HashMap<>();
+        Map<Long, RoaringBitmap> bits = new HashMap<>();
+        Map<Long, List<Line>> lines = new HashMap<>();
+        RowCallbackHandler row = rs -> {
+            long meal = rs.getLong(1);
+            int ingredient = rs.getInt(2);
+            names.putIfAbsent(ingredient, rs.getString(3));
+            bits.computeIfAbsent(meal, k -> new RoaringBitmap()).add(ingredient);
+            lines.computeIfAbsent(meal, k -> new ArrayList<>())
+                    .add(new Line(ingredient, rs.getBigDecimal(4), rs.getString(5)));
+        };
+        String select = """
+                SELECT mi.meal_id, mi.ingredient_id, i.name, mi.quantity, mi.unit
+                  FROM meal_ingredients mi
+                  JOIN meals m ON m.id = mi.meal_id
+                  JOIN ingredients i ON i.id = mi.ingredient_id
+                """;
+        if (household == null) {
+            jdbc.query(select + " WHERE m.household_id IS NULL", row);
+        } else {
+            jdbc.query(select + " WHERE m.household_id = ?", row, household);
+        }
+        bits.values().forEach(RoaringBitmap::runOptimize);
+        return new Snapshot(version, names, bits, lines);
+    }
+
+    private final class Entry {
+        final long household;
+        final ReentrantLock lock = new ReentrantLock();
+        volatile Snapshot index;
+        // Latest version seen by poll(); -1 until the first poll after loading
+        volatile long remoteVersion = -1;
+        volatile boolean stale;
+        volatile long lastAccess = System.nanoTime();
+
+        Entry(Long household) {
+            this.household = household;
+        }
+
+        Snapshot index() {
+            lastAccess = System.nanoTime();
+            Snapshot current = index;
+            if (current != null && !needsRebuild(current)) return current;
+
+            if (current == null) {
+                lock.lock(); // Nothing to serve yet: wait, but only on this household
+            } else if (!lock.tryLock()) {
+                return current; // Someone else is rebuilding; serve the previous version
+            }
+            try {
+                current = index;
+                if (current == null || needsRebuild(current)) {
+                    stale = false;
+                    // Version first: rows read after it are at least that new
+                    List<Long> version = jdbc.queryForList(
+                            "SELECT ingredient_version FROM households WHERE id = ?", Long.class, household);
+                    if (version.isEmpty()) {
+                        households.remove(household, this);
+                        throw new TenantCatalogs.UnknownHouseholdException(household);
+                    }
+                    current = load(version.get(0), household);
+                    index = current;
+                    log.debug("Household {} ingredient index loaded: version {}, {} meals mapped",
+                            household, current.version, current.bits.size());
+                }
+                return current;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean needsRebuild(Snapshot current) {
+            return stale || remoteVersion > current.version;
+        }
+    }
+
+    /** How to order candidates against a pantry. */
+    public enum Rank {
+        OVERLAP, // most pantry ingredients used first
+        MISSING; // fewest ingredients to buy first
+
+        public static Rank parse(String s) {
+            if (s == null || s.isBlank()) return OVERLAP;
+            try {
+                return Rank.valueOf(s.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown pantry rank '" + s + "' (expected overlap or missing)");
+            }
+        }
+    }
+
+    private record Line(int ingredient, BigDecimal quantity, String unit) {}
+
+    /** Immutable index of one scope (base library or one household) at one version. */
+    static final class Snapshot {
+        private final long version;
+        private final Map<Integer, String> names;
+        private final Map<String, Integer> idsByName = new HashMap<>();
+        private final Map<Long, RoaringBitmap> bits;
+        private final Map<Long, List<Line>> lines;
+        // Dense position of each mapped meal, its ingredient count, and the
+        // positions of the meals that use each ingredient
+        private final Map<Long, Integer> positions = new HashMap<>();
+        private final int[] sizes;
+        private final Map<Integer, RoaringBitmap> mealsWith = new HashMap<>();
+
+        Snapshot(long version, Map<Integer, String> names, Map<Long, RoaringBitmap> bits, Map<Long, List<Line>> lines) {
+            this.version = version;
+            this.names = names;
+            this.bits = bits;
+            this.lines = lines;
+            names.forEach((id, name) -> idsByName.put(norm(name), id));
+
+            this.sizes = new int[bits.size()];
+            for (Map.Entry<Long, RoaringBitmap> e : bits.entrySet()) {
+                int pos = positions.size();
+                positions.put(e.getKey(), pos);
+                sizes[pos] = e.getValue().getCardinality();
+                e.getValue().forEach((int ingredient) ->
+                        mealsWith.computeIfAbsent(ingredient, k -> new RoaringBitmap()).add(pos));
+            }
+            mealsWith.values().forEach(RoaringBitmap::runOptimize);
+        }
+
+        // |meal AND have| for every mapped meal, by position
+        int[] overlap(RoaringBitmap have) {
+            int[] c = new int[sizes.length];
+            have.forEach((int ingredient) -> {
+                RoaringBitmap meals = mealsWith.get(ingredient);
+                if (meals != null) meals.forEach((int pos) -> c[pos]++);
+            });
+            return c;
+        }
+    }
+
+    /**
+     * The base library's index, plus one household's when there is one. Every
+     * meal belongs to exactly one of the two, and ingredient ids are global, so
+     * lookups go to the household's index first and fall back to the base.
+     */
+    public static final class View {
+        private final Snapshot shared;
+        private final Snapshot own;
+
+        View(Snapshot shared, Snapshot own) {
+            this.shared = shared;
+            this.own = own;
+        }
+
+        /** Sorted names of the ingredients this view's meals use. */
+        public List<String> names() {
+            SortedSet<String> out = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+            out.addAll(shared.names.values());
+            if (own != null) out.addAll(own.names.values());
+            return new ArrayList<>(out);
+        }
+
+        public List<MealIngredient> ingredientsOf(long mealId) {
+            Snapshot s = scopeOf(mealId);
+            List<MealIngredient> out = new ArrayList<>();
+            for (Line l : s.lines.getOrDefault(mealId, List.of())) {
+                out.add(new MealIngredient(s.names.get(l.ingredient()), l.quantity(), l.unit()));
+            }
+            out.sort(Comparator.comparing(MealIngredient::getName, String.CASE_INSENSITIVE_ORDER));
+            return out;
+        }
+
+        /** Pantry from ingredient names; names the view doesn't know are ignored. */
+        public Pantry pantry(Collection<String> have, Rank rank) {
+            RoaringBitmap bitmap = new RoaringBitmap();
+            for (String name : have) {
+                String key = norm(name);
+                Integer id = (own != null) ? own.idsByName.get(key) : null;
+                if (id == null) id = shared.idsByName.get(key);
+                if (id != null) bitmap.add(id);
+            }
+            return new Pantry(this, bitmap, rank);
+        }
+
+        /**
+         * Everything the menu needs that isn't in the pantry (which may be null),
+         * with quantities summed per ingredient and unit, sorted by name.
+         */
+        public List<ShoppingItem> shoppingList(List<Meal> menu, Pantry pantry) {
+            RoaringBitmap need = new RoaringBitmap();
+            for (Meal m : menu) {
+                RoaringBitmap b = scopeOf(m.getId()).bits.get(m.getId());
+                if (b != null) need.or(b);
+            }
+            if (pantry != null) need.andNot(pantry.have);
+
+            Map<String, ShoppingItem> byKey = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (Meal m : menu) {
+                Snapshot s = scopeOf(m.getId());
+                for (Line l : s.lines.getOrDefault(m.getId(), List.of())) {
+                    if (!need.contains(l.ingredient())) continue;
+                    String name = s.names.get(l.ingredient());
+                    String unit = l.unit() == null ? "" : l.unit().trim();
+                    ShoppingItem item = byKey.computeIfAbsent(name + "\u0000" + unit,
+                            k -> new ShoppingItem(name, BigDecimal.ZERO, unit.isEmpty() ? null : unit, new ArrayList<>()));
+                    // One blank quantity makes the total unknown
+                    item.setQuantity(item.getQuantity() == null || l.quantity() == null
+                            ? null : item.getQuantity().add(l.quantity()));
+                    item.getMeals().add(m.getName());
+                }
+            }
+            return new ArrayList<>(byKey.values());
+        }
+
+        private Snapshot scopeOf(Long mealId) {
+            return (own != null && own.bits.containsKey(mealId)) ? own : shared;
+        }
+    }
+
+    /** Ingredients on hand, tied to the index view it was resolved against. */
+    public static final class Pantry {
+        private final View view;
+        private final RoaringBitmap have;
+        private final Rank rank;
+        // |meal AND pantry| by meal position, per scope; built on first use
+        private int[] sharedOverlap;
+        private int[] ownOverlap;
+
+        Pantry(View view, RoaringBitmap have, Rank rank) {
+            this.view = view;
+            this.have = have;
+            this.rank = rank;
+        }
+
+        View view() {
+            return view;
+        }
+
+        /**
+         * Sort key for a candidate; lower is better. Meals with no ingredients
+         * recorded sort after every meal that has some, in either mode.
+         */
+        long score(Meal meal) {
+            Snapshot s = view.scopeOf(meal.getId());
+            Integer pos = s.positions.get(meal.getId());
+            if (pos == null) return Long.MAX_VALUE;
+            int[] counts = overlap(s);
+            // |meal ANDNOT pantry| = |meal| - |meal AND pantry|
+            return rank == Rank.OVERLAP ? -counts[pos] : s.sizes[pos] - counts[pos];
+        }
+
+        private int[] overlap(Snapshot s) {
+            if (s == view.own) {
+                int[] c = ownOverlap;
+                if (c == null) ownOverlap = c = s.overlap(have);
+                return c;
+            }
+            int[] c = sharedOverlap;
+            if (c == null) sharedOverlap = c = s.overlap(have);
+            return c;
+        }
+
+        /** Stable identity for cache keys: rank, index versions and the resolved ids. */
+        public String canonical() {
+            StringJoiner ids = new StringJoiner(",");
+            have.forEach((int id) -> ids.add(Integer.toString(id)));
+            String versions = (view.own == null) ? Long.toString(view.shared.version)
+                    : view.shared.version + "." + view.own.version;
+            return rank.name().toLowerCase(Locale.ROOT) + "@" + versions + ":" + ids;
+        }
+    }
+
+    // Case- and accent-insensitive, like the default collation of ingredients.name
+    static String norm(String s) {
+        if (s == null) return "";
+        String decomposed = Normalizer.normalize(s.trim(), Normalizer.Form.NFD);
+        return MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+}
@@ -1,18 +1,27 @@
 package com.example.meal.service;
 
 import com.example.meal.Meal;
+import com.example.meal.dto.MealIngredient;
+import com.example.meal.dto.ShoppingItem;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * Service for generating meal plans based on user preferences.
@@ -27,38 +36,137 @@ public class MealService {
     // Reusable mapper for converting database rows to Meal objects
     private final BeanPropertyRowMapper<Meal> mealRowMapper =
             new BeanPropertyRowMapper<>(Meal.class);
-
-    public MealService(JdbcTemplate jdbc) {
+    // Node-local copy of the shared base library, kept coherent via catalog_version
+    private final CatalogCache catalog;
+    // Per-household recipe indexes overlaid on the base library
+    private final TenantCatalogs tenants;
+    // Orders the chosen meals across the week (no repeats on adjacent days, etc.)
+    private final MenuSequencer sequencer;
+    // Feedback-based weights for weighted generation
+    private final MealStatsService stats;
+    // Per-meal ingredient bitmaps for pantry ranking and shopping lists
+    private final IngredientIndex ingredients;
+    // Precomputed nearest neighbours for swapping a meal out of a menu
+    private final SimilarMeals similar;
+
+    private static final int POOL_PER_SLOT = 8;
+    private static final int MIN_POOL = 32;
+    private static final int MAX_POOL = 64;
+    private static final int IMPORT_BATCH_SIZE = 500;
+    // Keeps shifted pantry scores clear of the sign bit when packed into a long
+    private static final long PANTRY_SCORE_LIMIT = 1L << 29;
+
+    public MealService(JdbcTemplate jdbc, CatalogCache catalog, TenantCatalogs tenants,
+                       MenuSequencer sequencer, MealStatsService stats, IngredientIndex ingredients,
+                       SimilarMeals similar) {
         this.jdbc = jdbc;
+        this.catalog = catalog;
+        this.tenants = tenants;
+        this.sequencer = sequencer;
+        this.stats = stats;
+        this.ingredients = ingredients;
+        this.similar = similar;
     }
 
     // ---------------------- DATABASE OPERATIONS ----------------------
+    // A null household means the shared base library only; otherwise the
+    // household sees the base library plus its own meals, and can only
+    // change its own.
+
+    // Push every visible meal to the sink as rows are read, without building a list;
+    // streamed per statement like exportMeals, so the driver holds one row at a time
+    public void streamAllMeals(Long household, Consumer<Meal> sink) {
+        jdbc.query(con -> {
+            PreparedStatement ps = con.prepareStatement("""
+                    SELECT id, name, protein, cuisine, cook_time, cook_method, source, category, household_id
+                      FROM meals
+                     WHERE household_id IS NULL OR household_id = ?
+                     ORDER BY id
+                    """, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(Integer.MIN_VALUE);
+            ps.setObject(1, household);
+            return ps;
+        }, (RowCallbackHandler) rs -> sink.accept(exportRow(rs)));
+    }
 
-    // Get all meals from the database
-    public List<Meal> getAllMeals() {
-        return jdbc.query("""
-                SELECT id, name, protein, cuisine,
-                       cook_time AS cookTime, cook_method AS cookMethod, source
+    /** Optional export filters; null fields match everything. */
+    public record ExportFilter(String protein, String cuisine, String category, LocalDateTime updatedSince) {}
+
+    /**
+     * Push every visible meal matching the filter to the sink as the rows arrive.
+     * The statement is in Connector/J's streaming mode, so only the current row is
+     * held and memory stays flat however large the table is.
+     */
+    public void exportMeals(Long household, ExportFilter filter, Consumer<Meal> sink) {
+        StringBuilder sql = new StringBuilder("""
+                SELECT id, name, protein, cuisine, cook_time, cook_method, source, category, household_id
                   FROM meals
-                """, mealRowMapper);
+                 WHERE (household_id IS NULL OR household_id = ?)
+                """);
+        List<Object> args = new ArrayList<>();
+        args.add(household);
+        if (filter.protein() != null) {
+            sql.append("   AND LOWER(TRIM(protein)) = ?\n");
+            args.add(norm(filter.protein()));
+        }
+        if (filter.cuisine() != null) {
+            sql.append("   AND LOWER(TRIM(cuisine)) = ?\n");
+            args.add(norm(filter.cuisine()));
+        }
+        if (filter.category() != null) {
+            sql.append("   AND LOWER(TRIM(category)) = ?\n");
+            args.add(norm(filter.category()));
+        }
+        if (filter.updatedSince() != null) {
+            sql.append("   AND updated_at >= ?\n");
+            args.add(Timestamp.valueOf(filter.updatedSince()));
+        }
+        sql.append(" ORDER BY id");
+
+        jdbc.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql.toString(),
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            // Connector/J's signal to stream rows one at a time instead of reading the whole
+            // result; set on this statement only, the rest of the pool keeps its defaults
+            ps.setFetchSize(Integer.MIN_VALUE);
+            for (int i = 0; i < args.size(); i++) {
+                ps.setObject(i + 1, args.get(i));
+            }
+            return ps;
+        }, (RowCallbackHandler) rs -> sink.accept(exportRow(rs)));
+    }
+
+    // Positional mapping; BeanPropertyRowMapper's per-row reflection adds up over millions of rows
+    private static Meal exportRow(ResultSet rs) throws java.sql.SQLException {
+        Meal m = new Meal(rs.getLong(1), rs.getString(2), rs.getString(3), rs.getString(4),
+                rs.getString(5), rs.getString(6), rs.getString(7));
+        m.setCategory(rs.getString(8));
+        long household = rs.getLong(9);
+        m.setHouseholdId(rs.wasNull() ? null : household);
+        return m;
     }
 
-    public Meal getMealById(Long id) {
+    public Meal getMealById(Long household, Long id) {
         List<Meal> rows = jdbc.query("""
                 SELECT id, name, protein, cuisine,
-                       cook_time AS cookTime, cook_method AS cookMethod, source
+                       cook_time AS cookTime, cook_method AS cookMethod, source, category,
+                       household_id AS householdId
                   FROM meals
-                 WHERE id = ?
-                """, mealRowMapper, id);
+                 WHERE id = ? AND (household_id IS NULL OR household_id = ?)
+                """, mealRowMapper, id, household);
         return rows.isEmpty() ? null : rows.get(0);
     }
 
-    public Meal addMeal(Meal meal) {
+    @Transactional
+    public Meal addMeal(Long household, Meal meal) {
+        // Bump first: an unknown household is a 404, not a foreign key failure
+        bumpCatalogVersion(household);
         KeyHolder kh = new GeneratedKeyHolder();
         jdbc.update(con -> {
             PreparedStatement ps = con.prepareStatement("""
-                    INSERT INTO meals (name, protein, cuisine, cook_time, cook_method, source)
-                    VALUES (?, ?, ?, ?, ?, ?)
+                    INSERT INTO meals (name, protein, cuisine, cook_time, cook_method, source, category,
+                                       household_id)
+                    VALUES (?, ?, ?, ?, ?, ?, ?, ?)
                     """, Statement.RETURN_GENERATED_KEYS);
             ps.setString(1, safe(meal.getName()));
             ps.setString(2, safe(meal.getProtein()));
@@ -66,19 +174,48 @@ public class MealService {
             ps.setString(4, safe(meal.getCookTime()));
             ps.setString(5, safe(meal.getCookMethod()));
             ps.setString(6, safe(meal.getSource()));
+            ps.setString(7, safe(meal.getCategory()));
+            ps.setObject(8, household);
             return ps;
         }, kh);
         Number key = kh.getKey();
         if (key != null) meal.setId(key.longValue());
+        meal.setHouseholdId(household);
         return meal;
     }
 
-    public Meal updateMeal(Meal meal) {
-        jdbc.update("""
+    // Bulk insert in one transaction and one version bump, so other nodes and
+    // the household's index rebuild once rather than once per meal
+    @Transactional
+    public int importMeals(Long household, List<Meal> meals) {
+        if (meals.isEmpty()) return 0;
+        bumpCatalogVersion(household);
+        jdbc.batchUpdate("""
+                INSERT INTO meals (name, protein, cuisine, cook_time, cook_method, source, category,
+                                   household_id)
+                VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+                """, meals, IMPORT_BATCH_SIZE, (ps, meal) -> {
+            ps.setString(1, safe(meal.getName()));
+            ps.setString(2, safe(meal.getProtein()));
+            ps.setString(3, safe(meal.getCuisine()));
+            ps.setString(4, safe(meal.getCookTime()));
+            ps.setString(5, safe(meal.getCookMethod()));
+            ps.setString(6, safe(meal.getSource()));
+            ps.setString(7, safe(meal.getCategory()));
+            ps.setObject(8, household);
+        });
+        return meals.size();
+    }
+
+    // Only the household's own meals (or, without a household, base meals) can change
+    @Transactional
+    public Meal updateMeal(Long household, Meal meal) {
+        int rows = jdbc.update("""
                 UPDATE meals
                    SET name = ?, protein = ?, cuisine = ?,
-                       cook_time = ?, cook_method = ?, source = ?
-                 WHERE id = ?
+                       cook_time = ?, cook_method = ?, source = ?,
+                       category = ?
+                 WHERE id = ? AND household_id <=> ?
                 """,
                 safe(meal.getName()),
                 safe(meal.getProtein()),
@@ -86,68 +223,240 @@ public class MealService {
                 safe(meal.getCookTime()),
                 safe(meal.getCookMethod()),
                 safe(meal.getSource()),
-                meal.getId());
-        return getMealById(meal.getId());
+                safe(meal.getCategory()),
+                meal.getId(),
+                household);
+        if (rows == 0) return null;
+        bumpCatalogVersion(household);
+        return getMealById(household, meal.getId());
     }
 
-    public void deleteMeal(Long id) {
-        jdbc.update("DELETE FROM meals WHERE id = ?", id);
+    @Transactional
+    public void deleteMeal(Long household, Long id) {
+        int rows = jdbc.update("DELETE FROM meals WHERE id = ? AND household_id <=> ?", id, household);
+        if (rows > 0) bumpCatalogVersion(household);
     }
 
-    // Get available filter options by checking what's actually in the database
-    public Map<String, List<String>> getFilterOptions() {
-        // Check what protein types we have and how many of each
-        List<Map<String, Object>> allProteins = jdbc.queryForList("""
-                SELECT protein, COUNT(*) as count
-                FROM meals
-                GROUP BY protein
-                ORDER BY protein
-                """);
-        
-        log.info("=== ALL PROTEIN VALUES IN DATABASE ===");
-        for (Map<String, Object> row : allProteins) {
-            String protein = (String) row.get("protein");
-            Integer count = ((Number) row.get("count")).intValue();
-            log.info("Protein: '{}' (length: {}, count: {})", 
-                    protein, protein != null ? protein.length() : 0, count);
+    // ---------------------- INGREDIENTS ----------------------
+
+    // Names used by the base library and this household's own meals only
+    public List<String> getIngredientNames(Long household) {
+        return ingredients.view(household).names();
+    }
+
+    public List<MealIngredient> getMealIngredients(Long household, Long id) {
+        return ingredients.view(household).ingredientsOf(id);
+    }
+
+    /**
+     * Replace a meal's ingredient list, creating ingredient names as needed.
+     * Returns false if the household can't edit this meal.
+     */
+    @Transactional
+    public boolean setMealIngredients(Long household, Long mealId, List<MealIngredient> items) {
+        Integer editable = jdbc.queryForObject(
+                "SELECT COUNT(*) FROM meals WHERE id = ? AND household_id <=> ?", Integer.class, mealId, household);
+        if (editable == null || editable == 0) return false;
+
+        // One row per ingredient; the first mention wins
+        Map<String, MealIngredient> byName = new LinkedHashMap<>();
+        for (MealIngredient item : items) {
+            if (item.getName() == null || item.getName().isBlank()) {
+                throw new IllegalArgumentException("Ingredient name is required");
+            }
+            byName.putIfAbsent(norm(item.getName()), item);
         }
-        
-        List<String> proteins = jdbc.queryForList("""
-                SELECT DISTINCT TRIM(protein) AS val
-                  FROM meals
-                 WHERE protein IS NOT NULL AND TRIM(protein) <> ''
-                 ORDER BY TRIM(protein)
-                """, String.class);
-        
+
+        jdbc.update("DELETE FROM meal_ingredients WHERE meal_id = ?", mealId);
+        if (!byName.isEmpty()) {
+            List<MealIngredient> distinct = new ArrayList<>(byName.values());
+            jdbc.batchUpdate("INSERT IGNORE INTO ingredients (name) VALUES (?)", distinct, IMPORT_BATCH_SIZE,
+                    (ps, item) -> ps.setString(1, item.getName().trim()));
+
+            // Match with the column's own collation, not Java's idea of equal: a row takes
+            // the position of the first name it equals, so variants the database treats as
+            // the same ingredient (accents, case) resolve to one row and later ones drop out.
+            // A locking read also sees rows another transaction inserted since ours began.
+            Integer[] ids = new Integer[distinct.size()];
+            List<Object> args = new ArrayList<>();
+            for (int i = 0; i < distinct.size(); i++) {
+                args.add(distinct.get(i).getName().trim());
+                args.add(i);
+            }
+            for (MealIngredient item : distinct) args.add(item.getName().trim());
+            jdbc.query("SELECT CASE " + String.join(" ", Collections.nCopies(distinct.size(), "WHEN name = ? THEN ?"))
+                            + " END, id FROM ingredients WHERE name IN ("
+                            + String.join(",", Collections.nCopies(distinct.size(), "?")) + ") LOCK IN SHARE MODE",
+                    (RowCallbackHandler) rs -> ids[rs.getInt(1)] = rs.getInt(2), args.toArray());
+
+            List<Integer> resolved = new ArrayList<>();
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] != null) resolved.add(i);
+            }
+            jdbc.batchUpdate("""
+                    INSERT INTO meal_ingredients (meal_id, ingredient_id, quantity, unit)
+                    VALUES (?, ?, ?, ?)
+                    """, resolved, IMPORT_BATCH_SIZE, (ps, i) -> {
+                MealIngredient item = distinct.get(i);
+                ps.setLong(1, mealId);
+                ps.setInt(2, ids[i]);
+                ps.setBigDecimal(3, item.getQuantity());
+                ps.setString(4, item.getUnit());
+            });
+        }
+
+        // Only this meal's scope (base library or household) needs re-indexing
+        if (household == null) {
+            jdbc.update("UPDATE catalog_version SET version = version + 1 WHERE id = ?", IngredientIndex.VERSION_ROW);
+        } else {
+            jdbc.update("UPDATE households SET ingredient_version = ingredient_version + 1 WHERE id = ?", household);
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                if (household == null) {
+                    ingredients.poll();
+                } else {
+                    ingredients.invalidate(household);
+                }
+            }
+        });
+        return true;
+    }
+
+    /** Resolve pantry names against the household's current index; null when no pantry was given. */
+    public IngredientIndex.Pantry pantryFor(Long household, List<String> names, IngredientIndex.Rank rank) {
+        return names == null ? null : ingredients.view(household).pantry(names, rank);
+    }
+
+    /** What to buy for this menu, net of the pantry if there is one. */
+    public List<ShoppingItem> shoppingList(Long household, List<Meal> menu, IngredientIndex.Pantry pantry) {
+        IngredientIndex.View index = (pantry != null) ? pantry.view() : ingredients.view(household);
+        return index.shoppingList(menu, pantry);
+    }
+
+    /**
+     * Up to k meals most like this one that could take its place in the menu
+     * (meal ids in day order, or null): never a meal already on the menu and,
+     * when the meal is on it, only ones that keep the sequencing rules with the
+     * days either side. Null if the household can't see the meal.
+     */
+    public List<Meal> similarMeals(Long household, Long id, List<Long> menuIds, int k, boolean sameProtein) {
+        CatalogView view = catalogFor(household);
+        if (id == null || view.get(id) == null) return null;
+
+        // Ids that no longer exist are dropped, closing up the gap
+        List<Meal> menu = new ArrayList<>();
+        Set<Long> onMenu = new HashSet<>();
+        onMenu.add(id);
+        int day = -1;
+        for (Long mealId : (menuIds == null ? List.<Long>of() : menuIds)) {
+            Meal m = (mealId == null) ? null : view.get(mealId);
+            if (m == null) continue;
+            if (day < 0 && mealId.equals(id)) day = menu.size();
+            menu.add(m);
+            onMenu.add(mealId);
+        }
+        int swapDay = day;
+        return similar.similar(view, id, k, sameProtein,
+                m -> !onMenu.contains(m.getId()) && (swapDay < 0 || sequencer.fits(menu, swapDay, m)));
+    }
+
+    // The catalog this household generates from; its versions key cached menus
+    public CatalogView catalogFor(Long household) {
+        return tenants.view(household);
+    }
+
+    // Meal stats epoch for this catalog's household; part of the cache key for weighted menus
+    public long getStatsEpoch(CatalogView catalog) {
+        return stats.epoch(catalog.household());
+    }
+
+    // Cheap existence check against the node-local catalog (no DB round trip)
+    public boolean isKnownMeal(Long household, Long id) {
+        return id != null && catalogFor(household).get(id) != null;
+    }
+
+    // Must run inside the write's transaction so other nodes never see the
+    // new version without the new rows. This node syncs right after commit.
+    // Household writes only bump that household, leaving everyone else's
+    // indexes and cached menus alone.
+    private void bumpCatalogVersion(Long household) {
+        if (household == null) {
+            jdbc.update("UPDATE catalog_version SET version = version + 1 WHERE id = 1");
+        } else if (jdbc.update("UPDATE households SET catalog_version = catalog_version + 1 WHERE id = ?",
+                household) == 0) {
+            throw new TenantCatalogs.UnknownHouseholdException(household);
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                if (household == null) {
+                    catalog.poll();
+                } else {
+                    tenants.invalidate(household);
+                }
+            }
+        });
+    }
+
+    // Get available filter options from the node-local catalog
+    public Map<String, List<String>> getFilterOptions(Long household) {
+        List<String> proteins = catalogFor(household).proteins();
+
         Map<String, List<String>> out = new HashMap<>();
         out.put("proteins", proteins);
         out.put("cuisines", new ArrayList<>()); // Empty list for backward compatibility
-        
+
         log.info("=== CLEANED PROTEIN OPTIONS ===");
         for (String protein : proteins) {
             log.info("Available protein: '{}' (normalized: '{}')", protein, norm(protein));
         }
-        
+
         return out;
     }
 
     // ---------------------- MENU GENERATION ----------------------
 
+    /**
+     * Generate a menu without a pantry. See the pantry overload below.
+     */
+    @Transactional(readOnly = true)
+    public List<Meal> generateMenu(CatalogView snapshot,
+                                   Map<String, Integer> proteinDistribution,
+                                   List<String> selectedCuisines, // Ignored for current implementation
+                                   int days,
+                                   long seed,
+                                   boolean weighted) {
+        return generateMenu(snapshot, proteinDistribution, selectedCuisines, days, seed, weighted, null);
+    }
+
     /**
      * Generate a weekly menu that tries to match the user's protein preferences.
      * Uses a multi-step approach: satisfy constraints first, then fill remaining days.
+     * All randomness comes from the seed, so the same inputs on the same catalog
+     * version (and stats epoch, when weighted) always produce the same menu.
+     * When weighted, candidates are drawn in proportion to how well each meal has
+     * been received instead of uniformly. Meals come from the given catalog view,
+     * i.e. the base library plus the household's own recipes. With a pantry,
+     * candidates are ranked by how well they match it first; the random order
+     * only breaks ties.
      */
     @Transactional(readOnly = true)
-    public List<Meal> generateMenu(Map<String, Integer> proteinDistribution,
+    public List<Meal> generateMenu(CatalogView snapshot,
+                                   Map<String, Integer> proteinDistribution,
                                    List<String> selectedCuisines, // Ignored for current implementation
-                                   int days) {
+                                   int days,
+                                   long seed,
+                                   boolean weighted,
+                                   IngredientIndex.Pantry pantry) {
 
         log.info("=== GENERATE MENU START ===");
         log.info("Input proteinDistribution: {}", proteinDistribution);
-        log.info("Input days: {}", days);
+        log.info("Input days: {}, seed: {}", days, seed);
 
-        // Let's see what proteins are actually available in the database
-        debugDatabaseProteins();
+        Random rnd = new Random(seed);
+        MealStatsService.Sampler sampler = weighted ? stats.sampler(snapshot) : null;
 
         // Use proteins exactly as provided (no normalization)
         log.info("Processing protein distribution without normalization: {}", proteinDistribution);
@@ -165,16 +474,16 @@ public class MealService {
         int targetDays = days;
         log.info("Target days: {} (protein total: {}, requested days: {})", targetDays, proteinTotal, days);
 
-        // Track our results and make sure we don't duplicate meals
-        List<Meal> result = new ArrayList<>();
-        Set<Long> usedIds = new HashSet<>();  // Fast lookup to avoid duplicate meals
+        // Candidates per requested protein; the sequencer decides which are used and on which day
+        List<MenuSequencer.Quota> quotas = new ArrayList<>();
 
-        // Step 1: Try to satisfy the protein requirements first
+        // Step 1: Gather candidates for the protein requirements first
         if (proteinDistribution != null && !proteinDistribution.isEmpty()) {
             log.info("Processing protein preferences...");
 
-            // Go through each protein type the user wants
-            for (Map.Entry<String, Integer> entry : proteinDistribution.entrySet()) {
+            // Go through each protein type the user wants, in a stable order so the
+            // seed replays identically regardless of JSON key order
+            for (Map.Entry<String, Integer> entry : sortedProteins(proteinDistribution).entrySet()) {
                 String protein = entry.getKey();
                 Integer count = entry.getValue();
 
@@ -185,7 +494,7 @@ public class MealService {
 
                 log.info("=== PROCESSING PROTEIN: '{}' (need {} meals) ===", protein, count);
 
-                List<Meal> proteinMeals = queryByProteinExact(protein);
+                List<Meal> proteinMeals = snapshot.byProtein(protein);
                 log.info("Found {} meals for protein '{}'", proteinMeals.size(), protein);
                 
                 if (proteinMeals.isEmpty()) {
@@ -196,56 +505,42 @@ public class MealService {
                 }
                 
                 // Randomize the meal order so we get variety
-                Collections.shuffle(proteinMeals);
-
-                // Pick the requested number of meals for this protein
-                int added = 0;
-                for (Meal meal : proteinMeals) {
-                    if (added >= count) break;
-                    // Make sure we haven't already used this meal
-                    if (meal.getId() != null && usedIds.add(meal.getId())) {
-                        result.add(meal);
-                        added++;
-                        log.info("✓ Added meal: '{}' (id: {}, protein: '{}')",
-                                meal.getName(), meal.getId(), meal.getProtein());
-                    }
+                List<Meal> candidates;
+                if (pantry != null) {
+                    // Rank the whole group, so good pantry matches aren't cut off by the pool size
+                    List<Meal> ordered = (sampler != null)
+                            ? sampler.pickProtein(protein, proteinMeals.size(), rnd)
+                            : shuffled(proteinMeals, rnd);
+                    candidates = firstN(byPantry(ordered, pantry), poolSize(count));
+                } else {
+                    candidates = (sampler != null)
+                            ? sampler.pickProtein(protein, poolSize(count), rnd)
+                            : firstN(shuffled(proteinMeals, rnd), poolSize(count));
                 }
-                
-                log.info("Result: Added {}/{} meals for protein '{}'", added, count, protein);
+                quotas.add(new MenuSequencer.Quota(candidates, count));
             }
         } else {
             log.info("No protein distribution specified, will use random meals");
         }
 
-        // Step 2: Fill any remaining days with random meals
-        if (result.size() < targetDays) {
-            int needed = targetDays - result.size();
-            log.info("Need {} more meals, filling with random options...", needed);
-
-            List<Meal> allMeals = queryAllMeals();
-            // Shuffle to get variety in our random picks
-            Collections.shuffle(allMeals);
-            
-            int added = 0;
-            for (Meal meal : allMeals) {
-                if (added >= needed) break;
-                if (meal.getId() != null && usedIds.add(meal.getId())) {
-                    result.add(meal);
-                    added++;
-                    log.info("Filled slot with: '{}' (protein: {})", meal.getName(), meal.getProtein());
-                }
-            }
-            
-            log.info("Filled {} additional slots", added);
+        // Step 2: Random candidates for any days the proteins don't cover
+        int fillerPool = poolSize(Math.max(0, targetDays - proteinTotal));
+        // Shuffle to get variety in our random picks
+        List<Meal> fillers;
+        if (pantry != null) {
+            List<Meal> ordered = (sampler != null)
+                    ? sampler.pickAll(snapshot.size(), rnd)
+                    : shuffled(snapshot.meals(), rnd);
+            fillers = firstN(byPantry(ordered, pantry), fillerPool);
+        } else {
+            fillers = (sampler != null)
+                    ? sampler.pickAll(fillerPool, rnd)
+                    : firstN(shuffled(snapshot.meals(), rnd), fillerPool);
         }
 
-        // Step 3: Final shuffle and trim to exact number needed
-        Collections.shuffle(result);  // Mix up the order so it's not predictable
-        if (result.size() > targetDays) {
-            // Trim down to exactly what we need
-            result = new ArrayList<>(result.subList(0, targetDays));
-        }
-        
+        // Step 3: Assign meals to days under the sequencing rules
+        List<Meal> result = sequencer.sequence(quotas, fillers, targetDays);
+
         log.info("=== FINAL MENU SUMMARY ===");
         log.info("Total meals: {}", result.size());
         // Count up what we actually ended up with for debugging
@@ -268,21 +563,6 @@ public class MealService {
 
     // ---------------------- Debug Methods ----------------------
     
-    private void debugDatabaseProteins() {
-        log.info("=== DATABASE PROTEIN DEBUG ===");
-        List<Meal> allMeals = queryAllMeals();
-        Set<String> uniqueProteins = new HashSet<>();
-        
-        for (Meal meal : allMeals) {
-            String protein = meal.getProtein();
-            uniqueProteins.add(protein);
-            log.info("Meal '{}' has protein: '{}' (normalized: '{}')", 
-                    meal.getName(), protein, norm(protein));
-        }
-        
-        log.info("Unique proteins in database: {}", uniqueProteins);
-    }
-    
     private void checkSimilarProteins(String searchProtein) {
         log.info("Checking for proteins similar to '{}'...", searchProtein);
         
@@ -303,30 +583,6 @@ public class MealService {
 
     // ---------------------- SQL helpers ----------------------
 
-    private List<Meal> queryAllMeals() {
-        return jdbc.query("""
-                SELECT id, name, protein, cuisine,
-                       cook_time AS cookTime, cook_method AS cookMethod, source
-                  FROM meals
-                """, mealRowMapper);
-    }
-
-    private List<Meal> queryByProteinExact(String protein) {
-        log.info("=== SQL QUERY DEBUG ===");
-        log.info("Searching for exact protein: '{}'", protein);
-
-        List<Meal> meals = jdbc.query("""
-                SELECT id, name, protein, cuisine,
-                       cook_time AS cookTime, cook_method AS cookMethod, source
-                  FROM meals
-                 WHERE protein = ?
-                """, mealRowMapper, protein);
-
-        log.info("Found {} meals for exact protein match: '{}'", meals.size(), protein);
-
-        return meals;
-    }
-
     private List<Meal> queryByProteinNormalized(String proteinNorm) {
         log.info("=== SQL QUERY DEBUG ===");
         log.info("Searching for normalized protein: '{}'", proteinNorm);
@@ -346,7 +602,7 @@ public class MealService {
 
         List<Meal> meals = jdbc.query("""
                 SELECT id, name, protein, cuisine,
-                       cook_time AS cookTime, cook_method AS cookMethod, source
+                       cook_time AS cookTime, cook_method AS cookMethod, source, category
                   FROM meals
                  WHERE LOWER(TRIM(protein)) = ?
                 """, mealRowMapper, proteinNorm);
@@ -381,6 +637,48 @@ public class MealService {
         return out;
     }
 
+    // Enough candidates per slot for the sequencer to work around conflicts,
+    // without its pairwise compatibility table growing with the catalog or the days asked for
+    private static int poolSize(int slots) {
+        return Math.min(MAX_POOL, Math.max(MIN_POOL, slots * POOL_PER_SLOT));
+    }
+
+    private static List<Meal> shuffled(List<Meal> meals, Random rnd) {
+        List<Meal> copy = new ArrayList<>(meals);
+        Collections.shuffle(copy, rnd);
+        return copy;
+    }
+
+    // Stable sort by pantry score, so the random (or weighted) order breaks ties.
+    // Score and position are packed into one long so this is a primitive sort.
+    private static List<Meal> byPantry(List<Meal> ordered, IngredientIndex.Pantry pantry) {
+        long[] keys = new long[ordered.size()];
+        for (int i = 0; i < keys.length; i++) {
+            long score = Math.max(-PANTRY_SCORE_LIMIT, Math.min(pantry.score(ordered.get(i)), PANTRY_SCORE_LIMIT))
+                    + PANTRY_SCORE_LIMIT;
+            keys[i] = (score << 32) | i;
+        }
+        Arrays.sort(keys);
+        List<Meal> out = new ArrayList<>(keys.length);
+        for (long k : keys) out.add(ordered.get((int) k));
+        return out;
+    }
+
+    private static List<Meal> firstN(List<Meal> meals, int n) {
+        return meals.size() <= n ? meals : new ArrayList<>(meals.subList(0, n));
+    }
+
+    // Null-safe copy of the distribution with keys in natural order
+    private static Map<String, Integer> sortedProteins(Map<String, Integer> in) {
+        Map<String, Integer> out = new TreeMap<>();
+        for (Map.Entry<String, Integer> e : in.entrySet()) {
+            if (e.getKey() != null) {
+                out.put(e.getKey(), e.getValue());
+            }
+        }
+        return out;
+    }
+
     private static String norm(String s) {
         return s == null ? "" : s.trim().toLowerCase(Locale.ROOT);
     }
@@ -0,0 +1,347 @@
+package com.example.meal.service;
+
+import com.example.meal.Meal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Tracks how meals are received (accepted, skipped, swapped out) and turns that
+ * into sampling weights for menu generation.
+ *
+ * Feedback only touches striped in-memory counters; a scheduled job flushes the
+ * deltas to meal_stats in one batch and re-reads the rows any node has updated
+ * since the last sync. Feedback is kept per household that gave it (0 when no
+ * household was named), so one family's tastes don't steer another's menus and
+ * its feedback doesn't invalidate everyone else's weighted menus. A household's
+ * weights fall back to the anonymous totals for meals it hasn't rated. Weighted
+ * draws use alias tables rebuilt once per (catalog version, stats epoch), so
+ * each draw is O(1).
+ */
+@Service
+public class MealStatsService {
+
+    private static final Logger log = LoggerFactory.getLogger(MealStatsService.class);
+
+    // Smoothing so a meal with little feedback stays near the neutral weight
+    private static final double PRIOR = 2.0;
+    private static final double MIN_WEIGHT = 0.05;
+    // Samplers kept for the most recently used households (plus the base library)
+    private static final int MAX_SAMPLERS = 64;
+
+    public enum Event {
+        ACCEPT, SKIP, SWAP;
+
+        public static Event parse(String s) {
+            if (s == null) throw new IllegalArgumentException("Missing feedback event");
+            try {
+                return Event.valueOf(s.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown feedback event '" + s + "' (expected accept, skip or swap)");
+            }
+        }
+    }
+
+    private final JdbcTemplate jdbc;
+
+    // Re-read rows updated this long before the last sync; covers other nodes'
+    // flushes that stamped updated_at before our poll but committed after it
+    @Value("${meal-stats.lookback-seconds:5}")
+    private long lookbackSeconds;
+
+    // Not yet flushed, per (household, meal)
+    private final Map<Key, Counters> pending = new ConcurrentHashMap<>();
+    // Household id (0 for anonymous feedback) -> totals as of the last reload
+    private volatile Map<Long, Stats> stats = Map.of();
+    // Database time of the last reload; null until the first, full one. Sync job only.
+    private Timestamp syncedAt;
+    // Household id (0 for the base library) -> sampler, least recently used first
+    private final Map<Long, Sampler> samplers = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Sampler> eldest) {
+            return size() > MAX_SAMPLERS;
+        }
+    };
+
+    public MealStatsService(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /** Hot path: one counter increment under the map's per-bin lock, no I/O. A null household is anonymous feedback. */
+    public void record(Long household, long mealId, Event event) {
+        Key key = new Key(household == null ? 0L : household, mealId);
+        // Inside compute, so the increment lands wholly before or after flush() takes the entry
+        pending.compute(key, (k, c) -> {
+            Counters counters = (c == null) ? new Counters() : c;
+            counters.add(event);
+            return counters;
+        });
+    }
+
+    /**
+     * Content hash of the stats a household's weighted menus depend on: the
+     * anonymous totals and its own. Identical on every node that loaded the same rows.
+     */
+    public long epoch(Long household) {
+        Map<Long, Stats> current = stats;
+        long base = current.getOrDefault(0L, Stats.EMPTY).epoch();
+        if (household == null) return base;
+        return 31 * base + current.getOrDefault(household, Stats.EMPTY).epoch();
+    }
+
+    @Scheduled(fixedDelayString = "${meal-stats.flush-interval-ms:10000}")
+    public void flushAndReload() {
+        try {
+            flush();
+            reload();
+        } catch (RuntimeException e) {
+            log.warn("Meal stats sync failed: {}", e.toString());
+        }
+    }
+
+    private void flush() {
+        List<Object[]> batch = new ArrayList<>();
+        // Take each entry out before reading it; new events start a fresh one
+        for (Map.Entry<Key, Counters> e : pending.entrySet()) {
+            if (!pending.remove(e.getKey(), e.getValue())) continue;
+            long[] delta = e.getValue().totals();
+            if (delta[0] + delta[1] + delta[2] > 0) {
+                batch.add(new Object[] {e.getKey().household(), e.getKey().meal(), delta[0], delta[1], delta[2]});
+            }
+        }
+        if (batch.isEmpty()) return;
+        try {
+            jdbc.batchUpdate("""
+                    INSERT INTO meal_stats (household_id, meal_id, accepts, skips, swaps)
+                    VALUES (?, ?, ?, ?, ?)
+                    ON DUPLICATE KEY UPDATE accepts = accepts + VALUES(accepts),
+                                            skips = skips + VALUES(skips),
+                                            swaps = swaps + VALUES(swaps)
+                    """, batch);
+            log.info("Flushed feedback for {} meals", batch.size());
+        } catch (RuntimeException e) {
+            // Put the deltas back so the next flush retries them
+            for (Object[] row : batch) {
+                pending.compute(new Key((Long) row[0], (Long) row[1]), (k, c) -> {
+                    Counters counters = (c == null) ? new Counters() : c;
+                    counters.add((Long) row[2], (Long) row[3], (Long) row[4]);
+                    return counters;
+                });
+            }
+            throw e;
+        }
+    }
+
+    // Rows hold running totals, so re-reading one is harmless; only households
+    // with a row that actually changed get a new Stats (and epoch)
+    private void reload() {
+        Timestamp dbNow = jdbc.queryForObject("SELECT NOW()", Timestamp.class);
+        Map<Long, Map<Long, long[]>> changed = new HashMap<>();
+        RowCallbackHandler collect = rs -> changed.computeIfAbsent(rs.getLong(1), h -> new HashMap<>())
+                .put(rs.getLong(2), new long[] {rs.getLong(3), rs.getLong(4), rs.getLong(5)});
+        String select = "SELECT household_id, meal_id, accepts, skips, swaps FROM meal_stats";
+        if (syncedAt == null) {
+            jdbc.query(select, collect);
+        } else {
+            jdbc.query(select + " WHERE updated_at >= ?", collect,
+                    new Timestamp(syncedAt.getTime() - lookbackSeconds * 1000));
+        }
+        syncedAt = dbNow;
+
+        Map<Long, Stats> next = null;
+        for (Map.Entry<Long, Map<Long, long[]>> e : changed.entrySet()) {
+            Stats before = stats.getOrDefault(e.getKey(), Stats.EMPTY);
+            Stats after = before.with(e.getValue());
+            if (after != before) {
+                if (next == null) next = new HashMap<>(stats);
+                next.put(e.getKey(), after);
+            }
+        }
+        if (next != null) {
+            log.debug("Meal stats changed for households {}", next.keySet());
+            stats = Map.copyOf(next);
+        }
+    }
+
+    /** Sampler for this catalog view and the current stats, built once per version/epoch combination. */
+    public Sampler sampler(CatalogView catalog) {
+        long epoch = epoch(catalog.household());
+        Long key = catalog.household() == null ? 0L : catalog.household();
+        Sampler s;
+        synchronized (samplers) {
+            s = samplers.get(key);
+        }
+        if (s == null || !s.matches(catalog, epoch)) {
+            s = new Sampler(catalog, epoch);
+            synchronized (samplers) {
+                samplers.put(key, s);
+            }
+        }
+        return s;
+    }
+
+    /** Weighted draws over the whole catalog or one protein's meals. */
+    public final class Sampler {
+        private final CatalogView catalog;
+        private final long statsEpoch;
+        private final Group all;
+        private final Map<String, Group> byProtein = new ConcurrentHashMap<>();
+
+        private final Stats base;
+        private final Stats own;
+
+        private Sampler(CatalogView catalog, long statsEpoch) {
+            Map<Long, Stats> current = stats;
+            this.catalog = catalog;
+            this.statsEpoch = statsEpoch;
+            this.base = current.getOrDefault(0L, Stats.EMPTY);
+            this.own = catalog.household() == null ? Stats.EMPTY
+                    : current.getOrDefault(catalog.household(), Stats.EMPTY);
+            this.all = new Group(catalog.meals(), this::weight);
+        }
+
+        /** Smoothed acceptance rate; 0.5 for a meal nobody has rated yet. */
+        private double weight(Meal meal) {
+            long[] t = own.totals().get(meal.getId());
+            if (t == null) t = base.totals().get(meal.getId());
+            if (t == null) return 0.5;
+            double rate = (t[0] + PRIOR) / (t[0] + t[1] + t[2] + 2 * PRIOR);
+            return Math.max(MIN_WEIGHT, rate);
+        }
+
+        private boolean matches(CatalogView other, long epoch) {
+            return catalog.version() == other.version()
+                    && catalog.householdVersion() == other.householdVersion()
+                    && statsEpoch == epoch;
+        }
+
+        /** Up to n distinct meals, in weighted-random order. */
+        public List<Meal> pickAll(int n, Random rnd) {
+            return all.pick(n, rnd);
+        }
+
+        /** Up to n distinct meals of this protein, in weighted-random order. */
+        public List<Meal> pickProtein(String protein, int n, Random rnd) {
+            String key = protein == null ? "" : protein.trim().toLowerCase(Locale.ROOT);
+            return byProtein.computeIfAbsent(key, k -> new Group(catalog.byProtein(protein), this::weight))
+                    .pick(n, rnd);
+        }
+    }
+
+    private record Key(long household, long meal) {}
+
+    /** One household's totals (meal id -> {accepts, skips, swaps}) and their content hash. */
+    private record Stats(Map<Long, long[]> totals, long epoch) {
+        static final Stats EMPTY = new Stats(Map.of(), 0);
+
+        // A copy with these rows applied, or this same instance if none of them changed
+        Stats with(Map<Long, long[]> rows) {
+            Map<Long, long[]> next = null;
+            long hash = epoch;
+            for (Map.Entry<Long, long[]> e : rows.entrySet()) {
+                long[] old = totals.get(e.getKey());
+                if (Arrays.equals(old, e.getValue())) continue;
+                if (next == null) next = new HashMap<>(totals);
+                next.put(e.getKey(), e.getValue());
+                if (old != null) hash -= rowHash(e.getKey(), old);
+                hash += rowHash(e.getKey(), e.getValue());
+            }
+            return next == null ? this : new Stats(next, hash);
+        }
+
+        // Summed over rows, so the epoch can be updated per row and doesn't depend on load order
+        private static long rowHash(long mealId, long[] t) {
+            long h = mealId;
+            for (long v : t) h = 31 * h + v;
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            return h ^ (h >>> 33);
+        }
+    }
+
+    private static final class Group {
+        private final List<Meal> meals;
+        private final double[] weights;
+        private final AliasTable table;
+
+        Group(List<Meal> meals, ToDoubleFunction<Meal> weight) {
+            this.meals = meals;
+            this.weights = new double[meals.size()];
+            for (int i = 0; i < weights.length; i++) weights[i] = weight.applyAsDouble(meals.get(i));
+            this.table = meals.isEmpty() ? null : new AliasTable(weights);
+        }
+
+        List<Meal> pick(int n, Random rnd) {
+            int size = meals.size();
+            if (size == 0 || n <= 0) return new ArrayList<>();
+            if (size <= 2 * n) return weightedShuffle(n, rnd);
+
+            // Few picks from many meals: O(1) alias draws, rejecting repeats
+            BitSet seen = new BitSet(size);
+            List<Meal> out = new ArrayList<>(n);
+            for (int attempts = 0; out.size() < n && attempts < 8 * n; attempts++) {
+                int i = table.sample(rnd);
+                if (!seen.get(i)) {
+                    seen.set(i);
+                    out.add(meals.get(i));
+                }
+            }
+            // Heavily skewed weights: top up with whatever hasn't been drawn
+            for (int i = seen.nextClearBit(0); out.size() < n && i < size; i = seen.nextClearBit(i + 1)) {
+                out.add(meals.get(i));
+            }
+            return out;
+        }
+
+        // Small groups: weighted sampling without replacement via exponential keys
+        private List<Meal> weightedShuffle(int n, Random rnd) {
+            Integer[] order = new Integer[meals.size()];
+            double[] keys = new double[meals.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+                keys[i] = -Math.log(1.0 - rnd.nextDouble()) / weights[i];
+            }
+            Arrays.sort(order, Comparator.comparingDouble(i -> keys[i]));
+            List<Meal> out = new ArrayList<>(Math.min(n, order.length));
+            for (int i = 0; i < order.length && out.size() < n; i++) out.add(meals.get(order[i]));
+            return out;
+        }
+    }
+
+    private static final class Counters {
+        final LongAdder accepts = new LongAdder();
+        final LongAdder skips = new LongAdder();
+        final LongAdder swaps = new LongAdder();
+
+        void add(Event e) {
+            switch (e) {
+                case ACCEPT -> accepts.increment();
+                case SKIP -> skips.increment();
+                case SWAP -> swaps.increment();
+            }
+        }
+
+        void add(long a, long sk, long sw) {
+            accepts.add(a);
+            skips.add(sk);
+            swaps.add(sw);
+        }
+
+        // Only once the entry is out of pending, so nothing is still adding to it
+        long[] totals() {
+            return new long[] {accepts.sum(), skips.sum(), swaps.sum()};
+        }
+    }
+}
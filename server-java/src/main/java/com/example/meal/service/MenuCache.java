@@ -0,0 +1,95 @@
+package com.example.meal.service;
+
+import com.example.meal.Meal;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Bounded LRU cache of generated menus.
+ * Seeded generation is deterministic, so a menu is fully identified by
+ * (distribution, days, seed, household, catalog versions) and can be reused as-is.
+ * Weighted menus also depend on the meal stats epoch, and pantry menus on the
+ * pantry and ingredient index version.
+ */
+@Component
+public class MenuCache {
+
+    private final int maxEntries;
+    private final Map<Key, List<Meal>> entries;
+
+    public MenuCache(@Value("${menu.cache.max-entries:1000}") int maxEntries) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, List<Meal>> eldest) {
+                return size() > MenuCache.this.maxEntries;
+            }
+        };
+    }
+
+    /** Return the cached menu for this key, generating (outside the lock) on a miss. */
+    public List<Meal> get(Key key, Supplier<List<Meal>> generator) {
+        synchronized (entries) {
+            List<Meal> hit = entries.get(key);
+            if (hit != null) return hit;
+        }
+        List<Meal> menu = Collections.unmodifiableList(new ArrayList<>(generator.get()));
+        synchronized (entries) {
+            entries.putIfAbsent(key, menu);
+        }
+        return menu;
+    }
+
+    /**
+     * Cache key for a generated menu. The distribution is canonicalized
+     * (sorted, non-positive counts dropped) so equivalent requests share an entry.
+     */
+    public record Key(String distribution, int days, long seed, Long household,
+                      long catalogVersion, long householdVersion, boolean weighted, long statsEpoch,
+                      String pantry) {
+
+        public static Key of(Map<String, Integer> proteinDistribution, int days, long seed, CatalogView catalog,
+                             boolean weighted, long statsEpoch) {
+            return of(proteinDistribution, days, seed, catalog, weighted, statsEpoch, null);
+        }
+
+        public static Key of(Map<String, Integer> proteinDistribution, int days, long seed, CatalogView catalog,
+                             boolean weighted, long statsEpoch, IngredientIndex.Pantry pantry) {
+            return new Key(canonical(proteinDistribution), days, seed, catalog.household(),
+                    catalog.version(), catalog.householdVersion(), weighted, weighted ? statsEpoch : 0,
+                    pantry == null ? "" : pantry.canonical());
+        }
+
+        /** Strong ETag derived from the key; same key always yields the same body. */
+        public String etag() {
+            try {
+                MessageDigest md = MessageDigest.getInstance("SHA-256");
+                byte[] digest = md.digest(toString().getBytes(StandardCharsets.UTF_8));
+                return "\"" + HexFormat.of().formatHex(digest, 0, 12) + "\"";
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private static String canonical(Map<String, Integer> in) {
+            if (in == null) return "";
+            StringJoiner out = new StringJoiner(",");
+            new TreeMap<>(withoutNullKeys(in)).forEach((protein, count) -> {
+                if (count != null && count > 0) out.add(protein + ":" + count);
+            });
+            return out.toString();
+        }
+
+        private static Map<String, Integer> withoutNullKeys(Map<String, Integer> in) {
+            Map<String, Integer> out = new HashMap<>();
+            in.forEach((k, v) -> { if (k != null) out.put(k, v); });
+            return out;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.meal.service;
+
+import com.example.meal.Meal;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ready-made menus for the most requested distributions, so an unseeded
+ * generate request can be answered by popping one instead of generating.
+ *
+ * Demand is counted per (household, distribution, days, weighted). A periodic
+ * sweep keeps a bounded ring buffer for the top few, and a single background
+ * thread tops each buffer up as it drains. Every menu remembers the catalog
+ * versions and stats epoch it was built from; ones that no longer match are
+ * discarded when reached, and callers fall back to live generation.
+ */
+@Component
+public class MenuPool {
+
+    private static final Logger log = LoggerFactory.getLogger(MenuPool.class);
+    // Stop tracking new distributions past this many (counts are cleared every sweep)
+    private static final int MAX_TRACKED = 10_000;
+
+    /** A pre-generated menu and the cache key it was generated under. */
+    public record Prepared(MenuCache.Key key, List<Meal> menu) {}
+
+    private record Slot(Long household, String distribution, int days, boolean weighted) {
+        static Slot of(MenuCache.Key key) {
+            return new Slot(key.household(), key.distribution(), key.days(), key.weighted());
+        }
+    }
+
+    private final MealService mealService;
+    private final Map<Slot, Demand> demand = new ConcurrentHashMap<>();
+    private final Map<Slot, Pool> pools = new ConcurrentHashMap<>();
+    private final ExecutorService producer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "menu-pool");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Counter hits;
+    private final Counter misses;
+
+    @Value("${menu.pool.enabled:true}")
+    private boolean enabled;
+
+    // Menus kept per distribution
+    @Value("${menu.pool.capacity:16}")
+    private int capacity;
+
+    @Value("${menu.pool.max-distributions:8}")
+    private int maxDistributions;
+
+    // Requests per sweep interval before a distribution gets a pool
+    @Value("${menu.pool.min-demand:5}")
+    private long minDemand;
+
+    public MenuPool(MealService mealService, MeterRegistry meters) {
+        this.mealService = mealService;
+        this.hits = Counter.builder("menu.pool.hits")
+                .description("Generate requests answered from the pre-generated pool")
+                .register(meters);
+        this.misses = Counter.builder("menu.pool.misses")
+                .description("Unseeded generate requests that had to generate live")
+                .register(meters);
+        Gauge.builder("menu.pool.size", pools,
+                        p -> p.values().stream().mapToInt(pool -> pool.ready.size()).sum())
+                .description("Pre-generated menus ready across all distributions")
+                .register(meters);
+    }
+
+    /**
+     * Pop a ready menu matching {@code probe} (whose seed is ignored), or null
+     * if there is none yet. Constant time apart from skipping stale menus,
+     * each of which is only ever skipped once.
+     */
+    public Prepared take(MenuCache.Key probe) {
+        if (!enabled) return null;
+        Pool pool = pools.get(Slot.of(probe));
+        if (pool == null) return null;
+        pool.demand.increment();
+
+        Prepared p;
+        while ((p = pool.ready.poll()) != null && !matches(p.key(), probe)) {
+            // Built from an older catalog or stats epoch; drop it
+        }
+        if (pool.ready.size() <= capacity / 2) {
+            requestRefill(pool);
+        }
+        if (p != null) hits.increment();
+        return p;
+    }
+
+    /**
+     * Count an unseeded request that had to be generated live. Only called
+     * after generation succeeded, so invalid distributions never get a pool.
+     */
+    public void recordMiss(MenuCache.Key key, Map<String, Integer> distribution) {
+        if (!enabled) return;
+        misses.increment();
+        Slot slot = Slot.of(key);
+        if (pools.containsKey(slot)) return; // Already counted by take()
+        Demand d = demand.get(slot);
+        if (d == null) {
+            if (demand.size() >= MAX_TRACKED) return;
+            d = demand.computeIfAbsent(slot, s -> new Demand(distribution));
+        }
+        d.hits.increment();
+    }
+
+    /** Keep pools for the most requested distributions only, and age the counts. */
+    @Scheduled(fixedDelayString = "${menu.pool.sweep-interval-ms:30000}")
+    public void sweep() {
+        if (!enabled) return;
+        Map<Slot, Long> counts = new HashMap<>();
+        Map<Slot, Map<String, Integer>> distributions = new HashMap<>();
+        pools.forEach((slot, pool) -> {
+            counts.put(slot, pool.demand.sumThenReset());
+            distributions.put(slot, pool.distribution);
+        });
+        demand.forEach((slot, d) -> {
+            counts.merge(slot, d.hits.sumThenReset(), Long::sum);
+            distributions.putIfAbsent(slot, d.distribution);
+        });
+        demand.clear();
+
+        List<Slot> top = counts.entrySet().stream()
+                .filter(e -> e.getValue() >= minDemand)
+                .sorted(Map.Entry.<Slot, Long>comparingByValue().reversed())
+                .limit(maxDistributions)
+                .map(Map.Entry::getKey)
+                .toList();
+
+        pools.keySet().retainAll(top);
+        for (Slot slot : top) {
+            Pool pool = pools.computeIfAbsent(slot, s -> {
+                log.info("Menu pool added for {} ({} requests)", s, counts.get(s));
+                return new Pool(s, distributions.get(s), capacity);
+            });
+            // Carry half the recent demand over so popular pools don't flap
+            pool.demand.add(counts.get(slot) / 2);
+            requestRefill(pool);
+        }
+    }
+
+    private void requestRefill(Pool pool) {
+        if (pool.refilling.compareAndSet(false, true)) {
+            try {
+                producer.execute(() -> refill(pool));
+            } catch (RejectedExecutionException e) {
+                pool.refilling.set(false);
+            }
+        }
+    }
+
+    // Runs on the producer thread only
+    private void refill(Pool pool) {
+        try {
+            Slot slot = pool.slot;
+            int made = 0;
+            while (pools.get(slot) == pool && pool.ready.remainingCapacity() > 0) {
+                CatalogView catalog = mealService.catalogFor(slot.household());
+                long seed = ThreadLocalRandom.current().nextLong();
+                MenuCache.Key key = MenuCache.Key.of(pool.distribution, slot.days(), seed, catalog,
+                        slot.weighted(), mealService.getStatsEpoch(catalog));
+                List<Meal> menu = mealService.generateMenu(catalog, pool.distribution, null,
+                        slot.days(), seed, slot.weighted());
+                pool.ready.offer(new Prepared(key, Collections.unmodifiableList(new ArrayList<>(menu))));
+                made++;
+            }
+            log.debug("Menu pool {} refilled with {} menus", slot, made);
+        } catch (RuntimeException e) {
+            // e.g. an invalid distribution or a deleted household; stop pooling it
+            log.warn("Menu pool refill for {} failed, dropping it: {}", pool.slot, e.toString());
+            pools.remove(pool.slot, pool);
+        } finally {
+            pool.refilling.set(false);
+        }
+    }
+
+    private static boolean matches(MenuCache.Key made, MenuCache.Key probe) {
+        return made.catalogVersion() == probe.catalogVersion()
+                && made.householdVersion() == probe.householdVersion()
+                && made.statsEpoch() == probe.statsEpoch();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        producer.shutdownNow();
+    }
+
+    private static final class Demand {
+        final Map<String, Integer> distribution;
+        final LongAdder hits = new LongAdder();
+
+        Demand(Map<String, Integer> distribution) {
+            this.distribution = (distribution == null) ? Map.of() : new TreeMap<>(distribution);
+        }
+    }
+
+    private static final class Pool {
+        final Slot slot;
+        final Map<String, Integer> distribution;
+        // Fixed-size ring buffer; offer/poll are O(1)
+        final ArrayBlockingQueue<Prepared> ready;
+        final LongAdder demand = new LongAdder();
+        final AtomicBoolean refilling = new AtomicBoolean();
+
+        Pool(Slot slot, Map<String, Integer> distribution, int capacity) {
+            this.slot = slot;
+            this.distribution = distribution;
+            this.ready = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package com.example.meal.service;
+
+import com.example.meal.Meal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Assigns meals to the days of the week so that neighbouring days don't repeat
+ * themselves (same protein, same cuisine, two soups, two oven meals) and the week
+ * has at most a few slow-cooker meals.
+ *
+ * Depth-first backtracking over days. Candidate sets are BitSets over a small
+ * pre-shuffled pool, so "what may follow meal i" is one AND against a
+ * precomputed compatibility row. The pool is capped, so a node costs the same
+ * however large the catalog, and the search is bounded by a node count rather
+ * than wall-clock time so a seed always replays to the same menu
+ * (MenuSequencerBenchmark measures what the default cap costs). Each node checks
+ * that the meals left can still cover the days left, quota by quota, and that
+ * no protein is owed more days than the no-repeat rule leaves room for, so
+ * dead branches are cut early. If the cap is hit, or the quotas can't meet the
+ * rules at all, the longest valid prefix found is completed without sequencing rules.
+ */
+@Component
+public class MenuSequencer {
+
+    private static final Logger log = LoggerFactory.getLogger(MenuSequencer.class);
+
+    private final Rules rules;
+    private final long maxNodes;
+    private final int maxPool;
+
+    @Autowired
+    public MenuSequencer(
+            @Value("${menu.sequencing.max-slow-cooker:2}") int maxSlowCooker,
+            @Value("${menu.sequencing.adjacent-protein:true}") boolean adjacentProtein,
+            @Value("${menu.sequencing.adjacent-cuisine:true}") boolean adjacentCuisine,
+            @Value("${menu.sequencing.adjacent-soup:true}") boolean adjacentSoup,
+            @Value("${menu.sequencing.adjacent-oven:true}") boolean adjacentOven,
+            @Value("${menu.sequencing.max-nodes:200000}") long maxNodes,
+            @Value("${menu.sequencing.max-pool:256}") int maxPool) {
+        this(new Rules(maxSlowCooker, adjacentProtein, adjacentCuisine, adjacentSoup, adjacentOven),
+                maxNodes, maxPool);
+    }
+
+    public MenuSequencer(Rules rules, long maxNodes, int maxPool) {
+        this.rules = rules;
+        this.maxNodes = maxNodes;
+        this.maxPool = maxPool;
+    }
+
+    /** Which sequencing rules apply. A negative maxSlowCooker means unlimited. */
+    public record Rules(int maxSlowCooker, boolean adjacentProtein, boolean adjacentCuisine,
+                        boolean adjacentSoup, boolean adjacentOven) {}
+
+    /**
+     * Order a week of meals.
+     *
+     * @param quotas  per requested protein: its candidate meals (already shuffled) and how many days it needs
+     * @param fillers candidates for the remaining days (already shuffled); may overlap the quota lists
+     * @param days    number of days to fill
+     */
+    public List<Meal> sequence(List<Quota> quotas, List<Meal> fillers, int days) {
+        Problem p = new Problem(quotas, fillers, days);
+        Search s = new Search(p, true, maxNodes);
+        boolean feasible = s.feasible(0, -1);
+        if (!feasible) {
+            // No order can satisfy the rules (e.g. more days of one protein than
+            // non-adjacent slots): one greedy pass instead of exhausting the node cap
+            s = new Search(p, false, p.days);
+        }
+        boolean solved = s.run(0, -1);
+        int[] picks = solved ? s.path : s.best;
+        int filled = solved ? Math.min(days, p.pool.length) : s.bestDepth;
+        if (!solved) {
+            log.warn("Sequencing stopped after {} nodes ({}): keeping {}/{} constrained days", s.nodes,
+                    !feasible ? "quotas can't meet the rules" : s.outOfBudget ? "node cap" : "no solution",
+                    filled, days);
+        }
+        return p.complete(picks, filled);
+    }
+
+    /** One protein's candidates and the number of days it should get. */
+    public record Quota(List<Meal> candidates, int count) {}
+
+    /**
+     * Whether {@code candidate} could take day {@code day} of an already
+     * sequenced menu: compatible with the meals either side of it and within
+     * the slow-cooker limit. Whatever is on that day now is left out of the check.
+     */
+    public boolean fits(List<Meal> menu, int day, Meal candidate) {
+        Traits t = Traits.of(candidate);
+        if (day > 0 && !compatible(Traits.of(menu.get(day - 1)), t)) return false;
+        if (day + 1 < menu.size() && !compatible(t, Traits.of(menu.get(day + 1)))) return false;
+        if (t.slowCooker && rules.maxSlowCooker() >= 0) {
+            int slow = 0;
+            for (int d = 0; d < menu.size(); d++) {
+                if (d != day && Traits.of(menu.get(d)).slowCooker) slow++;
+            }
+            return slow < rules.maxSlowCooker();
+        }
+        return true;
+    }
+
+    private boolean compatible(Traits a, Traits b) {
+        if (rules.adjacentProtein() && a.protein.equals(b.protein) && !a.protein.isEmpty()) return false;
+        if (rules.adjacentCuisine() && a.cuisine.equals(b.cuisine) && !a.cuisine.isEmpty()) return false;
+        if (rules.adjacentSoup() && a.soup && b.soup) return false;
+        if (rules.adjacentOven() && a.oven && b.oven) return false;
+        return true;
+    }
+
+    // ---------------------- Problem setup ----------------------
+
+    private final class Problem {
+        final int days;
+        final Meal[] pool;
+        final int[] group;          // quota index for each pool meal, or -1
+        final int[] quota;          // days still owed per quota
+        final int free;             // days not tied to a quota
+        final BitSet[] groupMask;   // pool meals per quota
+        final int[] proteinOf;      // protein id per pool meal, or -1 for none
+        final int[] groupProtein;   // protein id shared by every meal of a quota, or -1
+        final BitSet slowMask = new BitSet();
+        final List<BitSet> apart = new ArrayList<>(); // meals that may never be on consecutive days (soups, oven meals)
+        final BitSet[] follows;     // follows[i]: meals allowed the day after meal i
+
+        Problem(List<Quota> quotas, List<Meal> fillers, int days) {
+            this.days = days;
+
+            // Pool = de-duplicated union of quota candidates and fillers, in given order,
+            // capped so the pairwise table below stays small whatever the caller passes
+            Map<Long, Integer> index = new LinkedHashMap<>();
+            List<Meal> meals = new ArrayList<>();
+            List<Integer> groups = new ArrayList<>();
+            int[] owed = new int[quotas.size()];
+            int total = 0;
+            for (int g = 0; g < quotas.size(); g++) {
+                Quota q = quotas.get(g);
+                int have = 0;
+                for (Meal m : q.candidates()) {
+                    if (meals.size() >= maxPool) break;
+                    if (m.getId() == null || index.containsKey(m.getId())) continue;
+                    index.put(m.getId(), meals.size());
+                    meals.add(m);
+                    groups.add(g);
+                    have++;
+                }
+                // Never owe more than exists, nor more days than the week has
+                owed[g] = Math.max(0, Math.min(Math.min(q.count(), have), days - total));
+                total += owed[g];
+            }
+            for (Meal m : fillers) {
+                if (meals.size() >= maxPool) break;
+                if (m.getId() == null || index.containsKey(m.getId())) continue;
+                index.put(m.getId(), meals.size());
+                meals.add(m);
+                groups.add(-1);
+            }
+
+            this.pool = meals.toArray(new Meal[0]);
+            this.group = groups.stream().mapToInt(Integer::intValue).toArray();
+            this.quota = owed;
+            this.free = Math.max(0, Math.min(days, pool.length) - total);
+
+            this.groupMask = new BitSet[quotas.size()];
+            for (int g = 0; g < groupMask.length; g++) groupMask[g] = new BitSet(pool.length);
+            Traits[] traits = new Traits[pool.length];
+            Map<String, Integer> proteinIds = new HashMap<>();
+            this.proteinOf = new int[pool.length];
+            for (int i = 0; i < pool.length; i++) {
+                traits[i] = Traits.of(pool[i]);
+                if (group[i] >= 0) groupMask[group[i]].set(i);
+                if (traits[i].slowCooker) slowMask.set(i);
+                proteinOf[i] = traits[i].protein.isEmpty() ? -1
+                        : proteinIds.computeIfAbsent(traits[i].protein, k -> proteinIds.size());
+            }
+            BitSet soups = new BitSet(pool.length);
+            BitSet ovens = new BitSet(pool.length);
+            for (int i = 0; i < pool.length; i++) {
+                if (traits[i].soup) soups.set(i);
+                if (traits[i].oven) ovens.set(i);
+            }
+            if (rules.adjacentSoup()) apart.add(soups);
+            if (rules.adjacentOven()) apart.add(ovens);
+            this.groupProtein = new int[groupMask.length];
+            for (int g = 0; g < groupMask.length; g++) {
+                int shared = -2;
+                for (int i = groupMask[g].nextSetBit(0); i >= 0; i = groupMask[g].nextSetBit(i + 1)) {
+                    shared = (shared == -2 || shared == proteinOf[i]) ? proteinOf[i] : -1;
+                }
+                groupProtein[g] = Math.max(-1, shared);
+            }
+
+            this.follows = new BitSet[pool.length];
+            for (int i = 0; i < pool.length; i++) {
+                BitSet row = new BitSet(pool.length);
+                for (int j = 0; j < pool.length; j++) {
+                    if (i != j && compatible(traits[i], traits[j])) row.set(j);
+                }
+                follows[i] = row;
+            }
+        }
+
+        /**
+         * Keep the first {@code filled} picks and fill the rest of the week honoring
+         * quotas and uniqueness only.
+         */
+        List<Meal> complete(int[] picks, int filled) {
+            int[] owed = quota.clone();
+            int freeLeft = free;
+            BitSet used = new BitSet(pool.length);
+            List<Meal> out = new ArrayList<>(days);
+            for (int d = 0; d < filled; d++) {
+                int i = picks[d];
+                used.set(i);
+                if (group[i] >= 0 && owed[group[i]] > 0) owed[group[i]]--; else freeLeft--;
+                out.add(pool[i]);
+            }
+            for (int g = 0; g < owed.length; g++) {
+                for (int i = groupMask[g].nextSetBit(0); i >= 0 && owed[g] > 0; i = groupMask[g].nextSetBit(i + 1)) {
+                    if (used.get(i)) continue;
+                    used.set(i);
+                    owed[g]--;
+                    out.add(pool[i]);
+                }
+            }
+            for (int i = used.nextClearBit(0); i < pool.length && freeLeft > 0; i = used.nextClearBit(i + 1)) {
+                used.set(i);
+                freeLeft--;
+                out.add(pool[i]);
+            }
+            return out;
+        }
+    }
+
+    // ---------------------- Search ----------------------
+
+    private final class Search {
+        final Problem p;
+        final boolean prune;
+        final long nodeCap;
+        final int[] path;
+        final int[] owed;
+        final int[] groupLeft;      // unused meals per quota
+        final int[] apartLeft;      // unused meals per p.apart class
+        final BitSet used;
+        final int slowTotal;
+        int freeLeft;
+        int slowUsed;
+        long nodes;
+        boolean outOfBudget;
+        int[] best;
+        int bestDepth = -1;
+
+        Search(Problem p, boolean prune, long nodeCap) {
+            this.p = p;
+            this.prune = prune;
+            this.nodeCap = nodeCap;
+            this.path = new int[p.days];
+            this.owed = p.quota.clone();
+            this.groupLeft = new int[owed.length];
+            for (int g = 0; g < owed.length; g++) groupLeft[g] = p.groupMask[g].cardinality();
+            this.apartLeft = p.apart.stream().mapToInt(BitSet::cardinality).toArray();
+            this.used = new BitSet(p.pool.length);
+            this.slowTotal = p.slowMask.cardinality();
+            this.freeLeft = p.free;
+            this.best = new int[p.days];
+        }
+
+        boolean run(int day, int prev) {
+            if (day > bestDepth) {
+                bestDepth = day;
+                System.arraycopy(path, 0, best, 0, day);
+            }
+            int target = Math.min(p.days, p.pool.length);
+            if (day == target) return true;
+            if (outOfBudget || ++nodes > nodeCap) {
+                outOfBudget = true;
+                return false;
+            }
+            if (prune && !feasible(day, prev)) return false;
+
+            BitSet candidates = candidates(prev);
+            for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                int g = p.group[i];
+                boolean fromQuota = g >= 0 && owed[g] > 0;
+                if (fromQuota) owed[g]--; else freeLeft--;
+                boolean slow = p.slowMask.get(i);
+                if (slow) slowUsed++;
+                if (g >= 0) groupLeft[g]--;
+                for (int c = 0; c < apartLeft.length; c++) {
+                    if (p.apart.get(c).get(i)) apartLeft[c]--;
+                }
+                used.set(i);
+                path[day] = i;
+
+                if (run(day + 1, i)) return true;
+
+                used.clear(i);
+                if (g >= 0) groupLeft[g]++;
+                for (int c = 0; c < apartLeft.length; c++) {
+                    if (p.apart.get(c).get(i)) apartLeft[c]++;
+                }
+                if (slow) slowUsed--;
+                if (fromQuota) owed[g]++; else freeLeft++;
+                if (outOfBudget) return false;
+            }
+            return false;
+        }
+
+        /**
+         * Necessary conditions for filling the rest of the week after prev: enough
+         * unused meals within the slow-cooker limit, enough left in every open
+         * quota, no protein owed more days than can be kept apart, and enough
+         * non-soups (non-oven meals) to go between the soups (oven meals).
+         */
+        boolean feasible(int day, int prev) {
+            int remaining = Math.min(p.days, p.pool.length) - day;
+            int slowLeft = slowTotal - slowUsed;
+            int usable = p.pool.length - day - slowLeft;
+            usable += (rules.maxSlowCooker() >= 0) ? Math.min(slowLeft, Math.max(0, rules.maxSlowCooker() - slowUsed)) : slowLeft;
+            if (usable < remaining) return false;
+            for (int c = 0; c < apartLeft.length; c++) {
+                boolean afterSame = prev >= 0 && p.apart.get(c).get(prev);
+                int most = afterSame ? remaining / 2 : (remaining + 1) / 2;
+                if (p.pool.length - day - apartLeft[c] < remaining - most) return false;
+            }
+            for (int g = 0; g < owed.length; g++) {
+                if (owed[g] > groupLeft[g]) return false;
+                int protein = p.groupProtein[g];
+                if (!rules.adjacentProtein() || owed[g] == 0 || protein < 0) continue;
+                int forced = 0;
+                for (int h = 0; h < owed.length; h++) {
+                    if (p.groupProtein[h] == protein) forced += owed[h];
+                }
+                // Every other day at most, one fewer if yesterday already had it
+                boolean afterSame = prev >= 0 && p.proteinOf[prev] == protein;
+                if (forced > (afterSame ? remaining / 2 : (remaining + 1) / 2)) return false;
+            }
+            return true;
+        }
+
+        // Unused meals that may follow prev, that some open quota (or a free day) can absorb
+        BitSet candidates(int prev) {
+            BitSet c;
+            if (freeLeft > 0) {
+                c = new BitSet(p.pool.length);
+                c.set(0, p.pool.length);
+            } else {
+                c = new BitSet(p.pool.length);
+                for (int g = 0; g < owed.length; g++) {
+                    if (owed[g] > 0) c.or(p.groupMask[g]);
+                }
+            }
+            if (prev >= 0) c.and(p.follows[prev]);
+            c.andNot(used);
+            if (rules.maxSlowCooker() >= 0 && slowUsed >= rules.maxSlowCooker()) c.andNot(p.slowMask);
+            return c;
+        }
+    }
+
+    // Normalized attributes the rules compare
+    private record Traits(String protein, String cuisine, boolean soup, boolean oven, boolean slowCooker) {
+        static Traits of(Meal m) {
+            String method = norm(m.getCookMethod());
+            return new Traits(
+                    norm(m.getProtein()),
+                    norm(m.getCuisine()),
+                    norm(m.getCategory()).equals("soup") || norm(m.getName()).contains("soup"),
+                    method.equals("oven"),
+                    method.equals("slow cooker") || method.equals("crockpot"));
+        }
+
+        private static String norm(String s) {
+            return s == null ? "" : s.trim().toLowerCase(Locale.ROOT);
+        }
+    }
+}
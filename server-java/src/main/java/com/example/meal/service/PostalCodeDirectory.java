@@ -0,0 +1,65 @@
+package com.example.meal.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Offline postal code -> coordinates lookup, loaded once at startup. Reads the bundled
+ * CSV ({@code code,lat,lon}) or, via weather.postal-codes, a GeoNames postal code dump
+ * (tab separated; code in column 2, latitude and longitude in columns 10 and 11).
+ */
+@Component
+public class PostalCodeDirectory {
+
+    private static final Logger log = LoggerFactory.getLogger(PostalCodeDirectory.class);
+
+    private final Map<String, double[]> coords = new HashMap<>();
+
+    public PostalCodeDirectory(@Value("${weather.postal-codes:classpath:postal-codes.csv}") Resource table) {
+        if (!table.exists()) {
+            log.warn("Postal code table {} not found; postal code lookups disabled", table);
+            return;
+        }
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(table.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isBlank() || line.startsWith("#") || line.startsWith("code,")) continue;
+                boolean geonames = line.indexOf('\t') >= 0;
+                String[] f = geonames ? line.split("\t") : line.split(",");
+                int code = geonames ? 1 : 0;
+                int lat = geonames ? 9 : 1;
+                if (f.length < lat + 2) continue;
+                try {
+                    // First row wins: GeoNames lists a code once per place it covers
+                    coords.putIfAbsent(normalize(f[code]),
+                            new double[] {Double.parseDouble(f[lat].trim()), Double.parseDouble(f[lat + 1].trim())});
+                } catch (NumberFormatException e) {
+                    log.warn("Skipping bad postal code row: {}", line);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Could not read postal code table {}: {}", table, e.toString());
+        }
+        log.info("Loaded {} postal codes", coords.size());
+    }
+
+    /** {lat, lon} for the code, or null if unknown. */
+    public double[] lookup(String postalCode) {
+        return (postalCode == null) ? null : coords.get(normalize(postalCode));
+    }
+
+    private static String normalize(String code) {
+        return code.trim().toUpperCase().replace(" ", "");
+    }
+}
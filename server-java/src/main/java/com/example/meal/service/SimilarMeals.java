@@ -0,0 +1,799 @@
+package com.example.meal.service;
+
+import com.example.meal.Meal;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * "More like this" lookups for swapping a meal out of a menu.
+ *
+ * Each meal is reduced to a short sparse vector of weighted features: protein,
+ * cuisine, cook method, category, a cook-time bucket and the words of its name
+ * (rarer words weigh more). Two meals score the summed weight of the features
+ * they share. Once per catalog version, every meal's nearest neighbours are
+ * worked out and stored as flat int arrays, so a request only walks a short
+ * precomputed list and filters it against the menu.
+ *
+ * Meals with the same attributes (a profile) score the same against everything
+ * except for name words, so attribute scores are computed once per profile and
+ * walked best first, and name words go through an inverted index. That keeps
+ * the build far from quadratic on large catalogs.
+ *
+ * The base library is indexed once and shared. A household only gets a small
+ * overlay for its own meals: their lists are ranked against the base index and
+ * each other, and a base meal asked about by the household picks up the
+ * household's meals at lookup time. When a version moves, indexes are rebuilt
+ * in the background and the previous one keeps serving meanwhile; the base
+ * index is started by {@link CatalogCache} as soon as it loads a version.
+ */
+@Component
+public class SimilarMeals {
+
+    private static final Logger log = LoggerFactory.getLogger(SimilarMeals.class);
+
+    // Overlays kept for the most recently used households
+    private static final int MAX_OVERLAYS = 64;
+
+    // Feature weights. Cook time is a bucket plus the two "bucket or a
+    // neighbour" ranges around it, so the same bucket scores 6 + 4 + 4 and
+    // an adjacent one 4.
+    private static final int PROTEIN = 30;
+    private static final int CUISINE = 20;
+    private static final int METHOD = 15;
+    private static final int CATEGORY = 10;
+    private static final int TIME_BUCKET = 6;
+    private static final int TIME_RANGE = 4;
+    private static final int MAX_WORD = 25;
+    private static final int MAX_ATTRIBUTE_SCORE = PROTEIN + CUISINE + METHOD + CATEGORY + TIME_BUCKET + 2 * TIME_RANGE;
+    // Name words in more meals than this, or than this share of the catalog, say
+    // little (typically the protein again) and are left out
+    private static final int STOP_WORD_MIN_MEALS = 50;
+    private static final int STOP_WORD_SHARE = 20;
+    // Upper bounds of the cook-time buckets, in minutes; anything longer is the last bucket
+    private static final int[] TIME_BUCKETS = {30, 60, 120};
+
+    private static final Pattern WORDS = Pattern.compile("[^\\p{L}\\p{N}]+");
+    // Optional qualifier, amount, optional "+" and unit: "< 30 min", "over 1 hour", "45+ minutes"
+    private static final Pattern DURATION = Pattern.compile(
+            "(<|>|under|less than|over|more than)?\\s*(\\d+(?:\\.\\d+)?)\\s*(\\+)?\\s*(h)?");
+
+    // Neighbours precomputed per meal; requests that filter all of them out fall back to a scan
+    @Value("${meals.similar.neighbours:16}")
+    private int neighbours;
+
+    // Rebuilds run here, one at a time, while requests keep using the previous index
+    private final ThreadPoolExecutor builder = new ThreadPoolExecutor(
+            1, 1, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(MAX_OVERLAYS + 1),
+            r -> {
+                Thread t = new Thread(r, "similar-index");
+                t.setDaemon(true);
+                return t;
+            });
+
+    private final Slot<Index> base = new Slot<>();
+
+    // Household id -> overlay, least recently used first
+    private final Map<Long, Slot<Overlay>> overlays = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Slot<Overlay>> eldest) {
+            return size() > MAX_OVERLAYS;
+        }
+    };
+
+    public SimilarMeals() {
+        builder.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        builder.shutdownNow();
+    }
+
+    /**
+     * Up to {@code k} meals most like {@code mealId}, best first, that pass
+     * {@code allowed}; optionally only meals of the same protein. Meals that
+     * share no feature with it are never returned.
+     */
+    public List<Meal> similar(CatalogView catalog, long mealId, int k, boolean sameProtein, Predicate<Meal> allowed) {
+        if (k <= 0) return new ArrayList<>();
+        Overlay index = overlay(catalog);
+        int pos = index.position(mealId);
+        if (pos < 0) return new ArrayList<>();
+        return index.similar(pos, k, sameProtein, allowed);
+    }
+
+    /**
+     * Starts indexing a new version of the base library in the background, so
+     * the first request after a deploy or an edit doesn't wait for the build.
+     */
+    public void prepare(CatalogView catalog) {
+        if (catalog.household() == null) base.refresh(catalog, this::buildBase);
+    }
+
+    private Overlay overlay(CatalogView catalog) {
+        if (catalog.household() == null) return base.get(catalog, this::buildBase).alone;
+        Slot<Overlay> slot;
+        synchronized (overlays) {
+            slot = overlays.computeIfAbsent(catalog.household(), h -> new Slot<>());
+        }
+        return slot.get(catalog, this::buildOverlay);
+    }
+
+    private Index buildBase(CatalogView catalog) {
+        long start = System.nanoTime();
+        List<Meal> meals = (catalog.household() == null) ? catalog.meals()
+                : catalog.meals().stream().filter(m -> m.getHouseholdId() == null).toList();
+        Index index = new Index(catalog.version(), meals, Math.max(0, neighbours));
+        log.info("Similar-meal index built for version {}: {} meals, {} profiles in {} ms",
+                index.version, index.meals.length, index.profiles.length, (System.nanoTime() - start) / 1_000_000);
+        return index;
+    }
+
+    private Overlay buildOverlay(CatalogView catalog) {
+        // Own meals are ranked against the base index, so bring that up to date first
+        Index shared = base.await(catalog, this::buildBase);
+        long start = System.nanoTime();
+        List<Meal> own = catalog.meals().stream().filter(m -> m.getHouseholdId() != null).toList();
+        Overlay overlay = new Overlay(shared, catalog.householdVersion(), own);
+        log.info("Similar-meal overlay built for household {}: {} meals in {} ms",
+                catalog.household(), overlay.own.length, (System.nanoTime() - start) / 1_000_000);
+        return overlay;
+    }
+
+    private interface Versioned {
+        /** True if built from this catalog's versions or later ones. */
+        boolean covers(CatalogView catalog);
+    }
+
+    /** One index, swapped for a rebuilt one once it is ready. */
+    private final class Slot<T extends Versioned> {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final AtomicBoolean queued = new AtomicBoolean();
+        private volatile T current;
+
+        T get(CatalogView catalog, Function<CatalogView, T> build) {
+            T cur = current;
+            if (cur != null && cur.covers(catalog)) return cur;
+            if (cur == null) return await(catalog, build); // Nothing to serve yet: wait, but only on this slot
+            refresh(catalog, build);
+            return cur;
+        }
+
+        // Queue a background build unless this slot is current or one is already queued
+        void refresh(CatalogView catalog, Function<CatalogView, T> build) {
+            T cur = current;
+            if (cur != null && cur.covers(catalog)) return;
+            if (queued.compareAndSet(false, true)) {
+                try {
+                    builder.execute(() -> {
+                        try {
+                            await(catalog, build);
+                        } catch (RuntimeException e) {
+                            log.warn("Similar-meal index rebuild failed: {}", e.toString());
+                        } finally {
+                            queued.set(false);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    queued.set(false); // Builder is backed up; the next request tries again
+                }
+            }
+        }
+
+        // Build unless someone already built this version or a later one
+        T await(CatalogView catalog, Function<CatalogView, T> build) {
+            lock.lock();
+            try {
+                T cur = current;
+                if (cur == null || !cur.covers(catalog)) {
+                    cur = build.apply(catalog);
+                    current = cur;
+                }
+                return cur;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /** Feature vectors, inverted indexes and neighbour lists for one version of the base library. */
+    private static final class Index implements Versioned {
+        final long version;
+        final Meal[] meals;
+        final Map<Long, Integer> positions = new HashMap<>();
+        final Map<String, Integer> ids = new HashMap<>(); // feature name -> feature id
+        final int[] weights;         // per feature
+        final int[] profileOf;       // per meal
+        final int[][] profiles;      // per profile: attribute feature ids, ascending
+        final int[] proteinOf;       // per profile: its protein feature, or -1
+        final int[][] members;       // per profile: meal positions, ascending
+        final int[][] profilesWith;  // per attribute feature: profiles that have it
+        final int[][] words;         // per meal: name word features worth scoring, ascending
+        final int[][] mealsWith;     // per name word feature: meal positions, ascending
+        final int k;
+        // k neighbour positions per meal, best first, padded with -1
+        final int[] any;
+        final int[] sameProtein;
+        // Lookups from the base library itself
+        final Overlay alone;
+
+        Index(long version, List<Meal> catalog, int k) {
+            this.version = version;
+            this.meals = catalog.toArray(new Meal[0]);
+            this.k = k;
+            int n = meals.length;
+
+            // Vectorize: attribute features make up the meal's profile, name words stay per meal
+            List<Integer> baseWeights = new ArrayList<>();
+            BitSet proteinFeatures = new BitSet();
+            Map<List<Integer>, Integer> profileIds = new HashMap<>();
+            List<int[]> profileList = new ArrayList<>();
+            int[][] allWords = new int[n][];
+            this.profileOf = new int[n];
+            for (int i = 0; i < n; i++) {
+                positions.putIfAbsent(meals[i].getId(), i);
+                List<Integer> attributes = new ArrayList<>();
+                List<Integer> nameWords = new ArrayList<>();
+                for (Map.Entry<String, Integer> e : featuresOf(meals[i]).entrySet()) {
+                    Integer id = ids.get(e.getKey());
+                    if (id == null) {
+                        id = ids.size();
+                        ids.put(e.getKey(), id);
+                        baseWeights.add(e.getValue());
+                        if (e.getKey().startsWith("p:")) proteinFeatures.set(id);
+                    }
+                    (e.getValue() > 0 ? attributes : nameWords).add(id);
+                }
+                Collections.sort(attributes);
+                profileOf[i] = profileIds.computeIfAbsent(attributes, a -> {
+                    profileList.add(a.stream().mapToInt(Integer::intValue).toArray());
+                    return profileList.size() - 1;
+                });
+                allWords[i] = nameWords.stream().mapToInt(Integer::intValue).toArray();
+            }
+            this.profiles = profileList.toArray(new int[0][]);
+
+            // Name words weigh more the rarer they are; one-off and very common words are dropped
+            int[] df = new int[ids.size()];
+            for (int[] w : allWords) {
+                for (int f : w) df[f]++;
+            }
+            int stopWordDf = Math.max(STOP_WORD_MIN_MEALS, n / STOP_WORD_SHARE);
+            this.weights = new int[ids.size()];
+            for (int f = 0; f < weights.length; f++) {
+                int w = baseWeights.get(f);
+                if (w == 0 && df[f] >= 2 && df[f] <= stopWordDf) w = wordWeight(n, df[f]);
+                weights[f] = w;
+            }
+            this.words = new int[n][];
+            for (int i = 0; i < n; i++) {
+                words[i] = Arrays.stream(allWords[i]).filter(f -> weights[f] > 0).sorted().toArray();
+            }
+
+            this.mealsWith = invert(words, weights.length);
+            this.profilesWith = invert(profiles, weights.length);
+            int[] size = new int[profiles.length];
+            for (int p : profileOf) size[p]++;
+            this.members = new int[profiles.length][];
+            for (int p = 0; p < profiles.length; p++) members[p] = new int[size[p]];
+            Arrays.fill(size, 0);
+            for (int i = 0; i < n; i++) members[profileOf[i]][size[profileOf[i]]++] = i;
+            this.proteinOf = new int[profiles.length];
+            for (int p = 0; p < profiles.length; p++) {
+                proteinOf[p] = -1;
+                for (int f : profiles[p]) {
+                    if (proteinFeatures.get(f)) proteinOf[p] = f;
+                }
+            }
+
+            this.any = new int[n * k];
+            this.sameProtein = new int[n * k];
+            Arrays.fill(any, -1);
+            Arrays.fill(sameProtein, -1);
+            if (k > 0) buildNeighbours();
+            this.alone = new Overlay(this, 0, List.of());
+        }
+
+        @Override
+        public boolean covers(CatalogView catalog) {
+            return version >= catalog.version();
+        }
+
+        int protein(int pos) {
+            return proteinOf[profileOf[pos]];
+        }
+
+        // Features this index knows; the rest can't match any of its meals
+        int[] known(int[] features) {
+            int known = 0;
+            for (int f : features) {
+                if (f < weights.length) known++;
+            }
+            if (known == features.length) return features;
+            return Arrays.stream(features).filter(f -> f < weights.length).toArray();
+        }
+
+        private void buildNeighbours() {
+            Ranker ranker = new Ranker();
+            long[] bestAny = new long[k];
+            long[] bestSame = new long[k];
+            for (int p = 0; p < profiles.length; p++) {
+                ranker.attributes(profiles[p]);
+                for (int q : members[p]) {
+                    ranker.rank(words[q], proteinOf[p], q, bestAny, bestSame);
+                    for (int i = 0; i < ranker.foundAny; i++) any[q * k + i] = (int) bestAny[i];
+                    for (int i = 0; i < ranker.foundSame; i++) sameProtein[q * k + i] = (int) bestSame[i];
+                }
+            }
+        }
+
+        /**
+         * Scratch space for ranking queries against this index one after
+         * another; not thread safe. Queries sharing attributes (a profile, or
+         * one household meal) bucket every profile sharing an attribute with
+         * them by score once; each query then gets the meals sharing a name
+         * word with it (scored in full) and the rest best profile first, until
+         * nothing left could make its lists.
+         */
+        final class Ranker {
+            private final int[] profileScore = new int[profiles.length];
+            private final int[] touchedProfiles = new int[profiles.length];
+            private final int[] bucket = new int[MAX_ATTRIBUTE_SCORE + 1];
+            private final int[] nextInBucket = new int[profiles.length];
+            private final int[] wordScore = new int[meals.length];
+            private final int[] touchedMeals = new int[meals.length];
+            private int profileCount;
+            // Sizes of the lists filled by the last rank()
+            int foundAny;
+            int foundSame;
+
+            void attributes(int[] features) {
+                for (int t = 0; t < profileCount; t++) profileScore[touchedProfiles[t]] = 0;
+                profileCount = scoreProfiles(features, profileScore, touchedProfiles);
+                Arrays.fill(bucket, -1);
+                for (int t = profileCount - 1; t >= 0; t--) {
+                    int r = touchedProfiles[t];
+                    nextInBucket[r] = bucket[profileScore[r]];
+                    bucket[profileScore[r]] = r;
+                }
+            }
+
+            // Best meals for a query with the last attributes and these name words, never self (-1 for none)
+            void rank(int[] nameWords, int protein, int self, long[] bestAny, long[] bestSame) {
+                foundAny = 0;
+                foundSame = 0;
+                int mealCount = scoreWords(nameWords, self, wordScore, touchedMeals);
+                for (int t = 0; t < mealCount; t++) {
+                    int m = touchedMeals[t];
+                    long key = key(profileScore[profileOf[m]] + wordScore[m], m);
+                    foundAny = offer(bestAny, foundAny, key);
+                    if (protein >= 0 && proteinOf[profileOf[m]] == protein) {
+                        foundSame = offer(bestSame, foundSame, key);
+                    }
+                }
+                // Everyone else scores just their profile's attribute score
+                for (int score = MAX_ATTRIBUTE_SCORE; score > 0; score--) {
+                    long best = key(score, 0);
+                    boolean needAny = foundAny < k || best < bestAny[k - 1];
+                    boolean needSame = protein >= 0 && (foundSame < k || best < bestSame[k - 1]);
+                    if (!needAny && !needSame) break;
+                    for (int r = bucket[score]; r >= 0; r = nextInBucket[r]) {
+                        boolean same = protein >= 0 && proteinOf[r] == protein;
+                        if (!needAny && !same) continue;
+                        for (int m : members[r]) {
+                            if (m == self || wordScore[m] > 0) continue;
+                            long key = key(score, m);
+                            foundAny = offer(bestAny, foundAny, key);
+                            if (same) foundSame = offer(bestSame, foundSame, key);
+                            // Members ascend, so the rest of this profile can only rank lower
+                            if (foundAny == k && key >= bestAny[k - 1]
+                                    && (!same || (foundSame == k && key >= bestSame[k - 1]))) break;
+                        }
+                    }
+                }
+                for (int t = 0; t < mealCount; t++) wordScore[touchedMeals[t]] = 0;
+            }
+        }
+
+        /** Adds the best meals for a query that pass the filter to {@code best}, scoring every meal; returns its new size. */
+        int scan(int[] attributes, int[] nameWords, int protein, int self, boolean sameOnly,
+                 long[] best, int found, IntPredicate allowed) {
+            int[] profileScore = new int[profiles.length];
+            int[] wordScore = new int[meals.length];
+            scoreProfiles(attributes, profileScore, new int[profiles.length]);
+            scoreWords(nameWords, self, wordScore, new int[meals.length]);
+            for (int m = 0; m < meals.length; m++) {
+                int score = profileScore[profileOf[m]] + wordScore[m];
+                if (score == 0 || m == self || (sameOnly && proteinOf[profileOf[m]] != protein)) continue;
+                long key = key(score, m);
+                if (found == best.length && key >= best[found - 1]) continue;
+                if (allowed.test(m)) found = offer(best, found, key);
+            }
+            return found;
+        }
+
+        // Attribute score of every profile sharing one of these attributes; returns how many were touched
+        private int scoreProfiles(int[] features, int[] scores, int[] touched) {
+            int count = 0;
+            for (int f : features) {
+                for (int r : profilesWith[f]) {
+                    if (scores[r] == 0) touched[count++] = r;
+                    scores[r] += weights[f];
+                }
+            }
+            return count;
+        }
+
+        // Name word score of every meal but self sharing one of these words; returns how many were touched
+        private int scoreWords(int[] nameWords, int self, int[] scores, int[] touched) {
+            int count = 0;
+            for (int f : nameWords) {
+                for (int m : mealsWith[f]) {
+                    if (m == self) continue;
+                    if (scores[m] == 0) touched[count++] = m;
+                    scores[m] += weights[f];
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * A household's own meals on top of a base index. Positions below the base
+     * library's size are base meals, the rest own meals in order. Features the
+     * base library doesn't have get ids after its own; words it knows keep its
+     * weights, new ones are weighted by rarity across both.
+     */
+    private static final class Overlay implements Versioned {
+        final Index base;
+        final long householdVersion;
+        final Meal[] own;
+        final Map<Long, Integer> positions = new HashMap<>(); // own meals only
+        final int[] extraWeights;     // per feature the base library doesn't have
+        final int[][] attributes;     // per own meal: attribute features, ascending
+        final int[][] words;          // per own meal: name word features worth scoring, ascending
+        final int[] proteinOf;        // per own meal: its protein feature, or -1
+        final Map<Integer, int[]> mealsWith = new HashMap<>(); // per feature: own meals, ascending
+        // k neighbour positions per own meal, best first, padded with -1
+        final int[] any;
+        final int[] sameProtein;
+
+        Overlay(Index base, long householdVersion, List<Meal> meals) {
+            this.base = base;
+            this.householdVersion = householdVersion;
+            this.own = meals.toArray(new Meal[0]);
+            int n = own.length;
+            int baseFeatures = base.weights.length;
+
+            Map<String, Integer> extraIds = new HashMap<>();
+            List<Integer> extraBaseWeights = new ArrayList<>();
+            int[][] allWords = new int[n][];
+            this.attributes = new int[n][];
+            this.proteinOf = new int[n];
+            for (int i = 0; i < n; i++) {
+                positions.putIfAbsent(own[i].getId(), i);
+                List<Integer> attrs = new ArrayList<>();
+                List<Integer> nameWords = new ArrayList<>();
+                int protein = -1;
+                for (Map.Entry<String, Integer> e : featuresOf(own[i]).entrySet()) {
+                    Integer id = base.ids.get(e.getKey());
+                    if (id == null) {
+                        id = extraIds.get(e.getKey());
+                        if (id == null) {
+                            id = baseFeatures + extraIds.size();
+                            extraIds.put(e.getKey(), id);
+                            extraBaseWeights.add(e.getValue());
+                        }
+                    }
+                    if (e.getKey().startsWith("p:")) protein = id;
+                    (e.getValue() > 0 ? attrs : nameWords).add(id);
+                }
+                attributes[i] = attrs.stream().mapToInt(Integer::intValue).sorted().toArray();
+                allWords[i] = nameWords.stream().mapToInt(Integer::intValue).toArray();
+                proteinOf[i] = protein;
+            }
+
+            int[] df = new int[extraIds.size()];
+            for (int[] w : allWords) {
+                for (int f : w) {
+                    if (f >= baseFeatures) df[f - baseFeatures]++;
+                }
+            }
+            int total = base.meals.length + n;
+            int stopWordDf = Math.max(STOP_WORD_MIN_MEALS, total / STOP_WORD_SHARE);
+            this.extraWeights = new int[extraIds.size()];
+            for (int f = 0; f < extraWeights.length; f++) {
+                int w = extraBaseWeights.get(f);
+                if (w == 0 && df[f] >= 2 && df[f] <= stopWordDf) w = wordWeight(total, df[f]);
+                extraWeights[f] = w;
+            }
+            this.words = new int[n][];
+            for (int i = 0; i < n; i++) {
+                words[i] = Arrays.stream(allWords[i]).filter(f -> weight(f) > 0).sorted().toArray();
+            }
+
+            Map<Integer, List<Integer>> with = new HashMap<>();
+            for (int i = 0; i < n; i++) {
+                for (int f : attributes[i]) with.computeIfAbsent(f, x -> new ArrayList<>()).add(i);
+                for (int f : words[i]) with.computeIfAbsent(f, x -> new ArrayList<>()).add(i);
+            }
+            with.forEach((f, list) -> mealsWith.put(f, list.stream().mapToInt(Integer::intValue).toArray()));
+
+            this.any = new int[n * base.k];
+            this.sameProtein = new int[n * base.k];
+            Arrays.fill(any, -1);
+            Arrays.fill(sameProtein, -1);
+            if (n > 0 && base.k > 0) buildNeighbours();
+        }
+
+        @Override
+        public boolean covers(CatalogView catalog) {
+            return base.covers(catalog) && householdVersion >= catalog.householdVersion();
+        }
+
+        // Own meals: the best of the base library by its ranker, then the other own meals scored in full
+        private void buildNeighbours() {
+            int k = base.k;
+            int offset = base.meals.length;
+            Index.Ranker ranker = base.new Ranker();
+            long[] bestAny = new long[k];
+            long[] bestSame = new long[k];
+            int[] scores = new int[own.length];
+            int[] touched = new int[own.length];
+            for (int q = 0; q < own.length; q++) {
+                int protein = proteinOf[q];
+                ranker.attributes(base.known(attributes[q]));
+                ranker.rank(base.known(words[q]), protein, -1, bestAny, bestSame);
+                int foundAny = ranker.foundAny;
+                int foundSame = ranker.foundSame;
+                int count = scoreOwn(attributes[q], words[q], q, scores, touched);
+                for (int t = 0; t < count; t++) {
+                    int m = touched[t];
+                    long key = key(scores[m], offset + m);
+                    foundAny = offer(bestAny, foundAny, key);
+                    if (protein >= 0 && proteinOf[m] == protein) foundSame = offer(bestSame, foundSame, key);
+                    scores[m] = 0;
+                }
+                for (int i = 0; i < foundAny; i++) any[q * k + i] = (int) bestAny[i];
+                for (int i = 0; i < foundSame; i++) sameProtein[q * k + i] = (int) bestSame[i];
+            }
+        }
+
+        int position(long mealId) {
+            Integer pos = positions.get(mealId);
+            if (pos != null) return base.meals.length + pos;
+            pos = base.positions.get(mealId);
+            return (pos == null) ? -1 : pos;
+        }
+
+        List<Meal> similar(int pos, int k, boolean sameProtein, Predicate<Meal> allowed) {
+            // A meal with no protein has no protein to keep
+            int protein = protein(pos);
+            boolean sameOnly = sameProtein && protein >= 0;
+            int offset = base.meals.length;
+            int stride = base.k;
+
+            // Precomputed list, plus own meals for a base meal; best first
+            int[] lists;
+            int start;
+            if (pos >= offset) {
+                lists = sameOnly ? this.sameProtein : any;
+                start = (pos - offset) * stride;
+            } else {
+                lists = sameOnly ? base.sameProtein : base.any;
+                start = pos * stride;
+            }
+            int[] scores = new int[own.length];
+            int[] touched = new int[own.length];
+            int ownCount = (pos >= offset) ? 0 : scoreOwn(attributesOf(pos), wordsOf(pos), -1, scores, touched);
+            long[] keys = new long[stride + ownCount];
+            int count = 0;
+            for (int i = start; i < start + stride && lists[i] >= 0; i++) {
+                keys[count++] = key(score(pos, lists[i]), lists[i]);
+            }
+            // A full list may leave out meals ranking below its last entry; a short one has them all
+            boolean full = count == stride;
+            long bound = !full ? Long.MAX_VALUE : (count == 0) ? Long.MIN_VALUE : keys[count - 1];
+            for (int t = 0; t < ownCount; t++) {
+                int m = touched[t];
+                if (sameOnly && proteinOf[m] != protein) continue;
+                keys[count++] = key(scores[m], offset + m);
+            }
+            Arrays.sort(keys, 0, count);
+
+            List<Meal> out = new ArrayList<>(k);
+            for (int i = 0; i < count && out.size() < k && keys[i] <= bound; i++) {
+                Meal m = meal((int) keys[i]);
+                if (allowed.test(m)) out.add(m);
+            }
+            if (out.size() < k && full) {
+                // The menu ruled out every precomputed neighbour; rank this meal against the whole catalog
+                return scan(pos, k, sameOnly, allowed);
+            }
+            return out;
+        }
+
+        private List<Meal> scan(int pos, int k, boolean sameOnly, Predicate<Meal> allowed) {
+            int offset = base.meals.length;
+            int protein = protein(pos);
+            long[] best = new long[k];
+            int found = base.scan(base.known(attributesOf(pos)), base.known(wordsOf(pos)), protein,
+                    pos < offset ? pos : -1, sameOnly, best, 0, n -> allowed.test(base.meals[n]));
+            int[] scores = new int[own.length];
+            int[] touched = new int[own.length];
+            int count = scoreOwn(attributesOf(pos), wordsOf(pos), pos - offset, scores, touched);
+            for (int t = 0; t < count; t++) {
+                int m = touched[t];
+                if (sameOnly && proteinOf[m] != protein) continue;
+                long key = key(scores[m], offset + m);
+                if (found == k && key >= best[k - 1]) continue;
+                if (allowed.test(own[m])) found = offer(best, found, key);
+            }
+            List<Meal> out = new ArrayList<>(found);
+            for (int i = 0; i < found; i++) out.add(meal((int) best[i]));
+            return out;
+        }
+
+        // Score of every own meal but self sharing a feature with the query; returns how many were touched
+        private int scoreOwn(int[] attrs, int[] nameWords, int self, int[] scores, int[] touched) {
+            int count = 0;
+            for (int[] features : new int[][] {attrs, nameWords}) {
+                for (int f : features) {
+                    int[] meals = mealsWith.get(f);
+                    if (meals == null) continue;
+                    int w = weight(f);
+                    for (int m : meals) {
+                        if (m == self) continue;
+                        if (scores[m] == 0) touched[count++] = m;
+                        scores[m] += w;
+                    }
+                }
+            }
+            return count;
+        }
+
+        // Summed weight of the features two meals share
+        private int score(int a, int b) {
+            return shared(attributesOf(a), attributesOf(b)) + shared(wordsOf(a), wordsOf(b));
+        }
+
+        private int shared(int[] x, int[] y) {
+            int total = 0;
+            for (int i = 0, j = 0; i < x.length && j < y.length; ) {
+                if (x[i] < y[j]) {
+                    i++;
+                } else if (x[i] > y[j]) {
+                    j++;
+                } else {
+                    total += weight(x[i]);
+                    i++;
+                    j++;
+                }
+            }
+            return total;
+        }
+
+        private int weight(int f) {
+            int baseFeatures = base.weights.length;
+            return f < baseFeatures ? base.weights[f] : extraWeights[f - baseFeatures];
+        }
+
+        private Meal meal(int pos) {
+            int offset = base.meals.length;
+            return pos < offset ? base.meals[pos] : own[pos - offset];
+        }
+
+        private int protein(int pos) {
+            int offset = base.meals.length;
+            return pos < offset ? base.protein(pos) : proteinOf[pos - offset];
+        }
+
+        private int[] attributesOf(int pos) {
+            int offset = base.meals.length;
+            return pos < offset ? base.profiles[base.profileOf[pos]] : attributes[pos - offset];
+        }
+
+        private int[] wordsOf(int pos) {
+            int offset = base.meals.length;
+            return pos < offset ? base.words[pos] : words[pos - offset];
+        }
+    }
+
+    // Rarer name words weigh more
+    private static int wordWeight(int meals, int df) {
+        return (int) Math.max(1, Math.min(MAX_WORD, Math.round(10 * Math.log((double) meals / df))));
+    }
+
+    // Feature -> rows that have it, rows ascending
+    private static int[][] invert(int[][] rows, int features) {
+        int[] count = new int[features];
+        for (int[] row : rows) {
+            for (int f : row) count[f]++;
+        }
+        int[][] out = new int[features][];
+        for (int f = 0; f < features; f++) out[f] = new int[count[f]];
+        Arrays.fill(count, 0);
+        for (int r = 0; r < rows.length; r++) {
+            for (int f : rows[r]) out[f][count[f]++] = r;
+        }
+        return out;
+    }
+
+    // Higher score first, then catalog order; sorts ascending as a long
+    private static long key(int score, int pos) {
+        return ((long) -score << 32) | pos;
+    }
+
+    // Insert into a sorted, bounded buffer; returns its new size
+    private static int offer(long[] best, int size, long key) {
+        if (size == best.length && key >= best[size - 1]) return size;
+        int i = (size < best.length) ? size++ : size - 1;
+        while (i > 0 && best[i - 1] > key) {
+            best[i] = best[i - 1];
+            i--;
+        }
+        best[i] = key;
+        return size;
+    }
+
+    // Feature name -> weight; 0 marks a name word, weighted by rarity later
+    private static Map<String, Integer> featuresOf(Meal m) {
+        Map<String, Integer> f = new LinkedHashMap<>();
+        put(f, "p:", m.getProtein(), PROTEIN);
+        put(f, "c:", m.getCuisine(), CUISINE);
+        put(f, "m:", m.getCookMethod(), METHOD);
+        put(f, "k:", m.getCategory(), CATEGORY);
+        int bucket = timeBucket(m.getCookTime());
+        if (bucket >= 0) {
+            f.put("t:" + bucket, TIME_BUCKET);
+            if (bucket > 0) f.put("t:" + (bucket - 1) + "-" + bucket, TIME_RANGE);
+            if (bucket < TIME_BUCKETS.length) f.put("t:" + bucket + "-" + (bucket + 1), TIME_RANGE);
+        }
+        for (String word : WORDS.split(norm(m.getName()))) {
+            if (word.length() >= 3) f.putIfAbsent("w:" + word, 0);
+        }
+        return f;
+    }
+
+    private static void put(Map<String, Integer> f, String prefix, String value, int weight) {
+        String v = norm(value);
+        if (!v.isEmpty()) f.put(prefix + v, weight);
+    }
+
+    // "< 30 minutes", "1 hour", "> 30 min", "2+ hours" -> bucket index; -1 if there's no duration in it.
+    // "More than" a bucket's bound belongs to the next bucket; "less than" one stays in it.
+    static int timeBucket(String cookTime) {
+        Matcher match = DURATION.matcher(norm(cookTime));
+        if (!match.find()) return -1;
+        String qualifier = match.group(1);
+        boolean more = match.group(3) != null || ">".equals(qualifier)
+                || "over".equals(qualifier) || "more than".equals(qualifier);
+        double amount = Double.parseDouble(match.group(2));
+        double minutes = (match.group(4) != null) ? amount * 60 : amount;
+        for (int b = 0; b < TIME_BUCKETS.length; b++) {
+            if (more ? minutes < TIME_BUCKETS[b] : minutes <= TIME_BUCKETS[b]) return b;
+        }
+        return TIME_BUCKETS.length;
+    }
+
+    private static String norm(String s) {
+        return s == null ? "" : s.trim().toLowerCase(Locale.ROOT);
+    }
+}
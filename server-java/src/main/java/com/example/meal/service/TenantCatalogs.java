@@ -0,0 +1,321 @@
+package com.example.meal.service;
+
+import com.example.meal.Meal;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Per-household recipe indexes, overlaid on the shared base library from
+ * {@link CatalogCache} without copying it.
+ *
+ * A household's index is built the first time it is asked for and rebuilt when
+ * its households.catalog_version moves. Each household loads under its own
+ * lock, and readers keep using the previous index while a rebuild is running,
+ * so a large import only ever slows down the household doing it. Indexes that
+ * push the estimated footprint over the memory budget are evicted least
+ * recently used first, as are indexes nobody has asked for in a while.
+ */
+@Component
+public class TenantCatalogs {
+
+    private static final Logger log = LoggerFactory.getLogger(TenantCatalogs.class);
+
+    // Rough heap cost of one indexed meal besides its strings: the object,
+    // its tree map entry and its slots in the meal and protein lists
+    private static final long MEAL_OVERHEAD_BYTES = 128;
+    private static final long STRING_OVERHEAD_BYTES = 40;
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate snapshotReads;
+    private final CatalogCache base;
+    private final BeanPropertyRowMapper<Meal> mealRowMapper = new BeanPropertyRowMapper<>(Meal.class);
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong residentBytes = new AtomicLong();
+    private final Counter evictions;
+
+    @Value("${tenants.cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    @Value("${tenants.cache.idle-minutes:60}")
+    private long idleMinutes;
+
+    public TenantCatalogs(JdbcTemplate jdbc, PlatformTransactionManager transactions,
+                          CatalogCache base, MeterRegistry meters) {
+        this.jdbc = jdbc;
+        this.snapshotReads = CatalogCache.snapshotReads(transactions);
+        this.base = base;
+        Gauge.builder("tenants.resident", entries, Map::size)
+                .description("Households with an index loaded on this node")
+                .register(meters);
+        Gauge.builder("tenants.resident.bytes", residentBytes, AtomicLong::get)
+                .description("Estimated heap used by loaded household indexes")
+                .register(meters);
+        this.evictions = Counter.builder("tenants.evictions")
+                .description("Household indexes dropped for memory or idleness")
+                .register(meters);
+    }
+
+    /** The catalog as this household sees it; the base library alone when household is null. */
+    public CatalogView view(Long household) {
+        CatalogCache.Snapshot shared = base.snapshot();
+        if (household == null) return shared;
+        Entry e = entries.computeIfAbsent(household, Entry::new);
+        return new Overlay(household, shared, e.index());
+    }
+
+    /** Force a rebuild on next use, e.g. right after this node committed a write. */
+    public void invalidate(Long household) {
+        if (household == null) return;
+        Entry e = entries.get(household);
+        if (e != null) e.stale = true;
+    }
+
+    @Scheduled(fixedDelayString = "${catalog.sync.poll-interval-ms:2000}")
+    public void poll() {
+        try {
+            evictIdle();
+            checkVersions();
+        } catch (RuntimeException e) {
+            log.warn("Household catalog poll failed: {}", e.toString());
+        }
+    }
+
+    // One query for every resident household; changed ones rebuild lazily on next use
+    private void checkVersions() {
+        List<Long> ids = new ArrayList<>(entries.keySet());
+        if (ids.isEmpty()) return;
+        String in = String.join(",", Collections.nCopies(ids.size(), "?"));
+        jdbc.query("SELECT id, catalog_version FROM households WHERE id IN (" + in + ")",
+                (RowCallbackHandler) rs -> {
+                    Entry e = entries.get(rs.getLong(1));
+                    if (e != null) e.remoteVersion = rs.getLong(2);
+                }, ids.toArray());
+    }
+
+    private void evictIdle() {
+        long cutoff = System.nanoTime() - TimeUnit.MINUTES.toNanos(idleMinutes);
+        for (Entry e : entries.values()) {
+            if (e.lastAccess - cutoff < 0) evict(e, "idle");
+        }
+    }
+
+    // Drop least recently used households until back under budget
+    private synchronized void enforceBudget(Entry keep) {
+        if (residentBytes.get() <= maxBytes) return;
+        List<Entry> byAge = new ArrayList<>(entries.values());
+        byAge.sort(Comparator.comparingLong(e -> e.lastAccess));
+        for (Entry e : byAge) {
+            if (residentBytes.get() <= maxBytes) break;
+            if (e != keep) evict(e, "memory budget");
+        }
+    }
+
+    private void evict(Entry e, String reason) {
+        // Never wait on a household that is loading
+        if (!e.lock.tryLock()) return;
+        try {
+            if (e.evicted || !entries.remove(e.household, e)) return;
+            e.evicted = true;
+            e.index = null;
+            residentBytes.addAndGet(-e.bytes);
+            e.bytes = 0;
+        } finally {
+            e.lock.unlock();
+        }
+        evictions.increment();
+        log.info("Evicted household {} index ({})", e.household, reason);
+    }
+
+    private final class Entry {
+        final long household;
+        final ReentrantLock lock = new ReentrantLock();
+        volatile CatalogCache.Snapshot index;
+        // Latest version seen by poll(); -1 until the first poll after loading
+        volatile long remoteVersion = -1;
+        volatile boolean stale;
+        volatile long lastAccess = System.nanoTime();
+        // Guarded by lock
+        boolean evicted;
+        long bytes;
+
+        Entry(Long household) {
+            this.household = household;
+        }
+
+        CatalogCache.Snapshot index() {
+            lastAccess = System.nanoTime();
+            CatalogCache.Snapshot current = index;
+            if (current != null && !needsRebuild(current)) return current;
+
+            if (current == null) {
+                lock.lock(); // Nothing to serve yet: wait, but only on this household
+            } else if (!lock.tryLock()) {
+                return current; // Someone else is rebuilding; serve the previous version
+            }
+            try {
+                current = index;
+                if (current == null || needsRebuild(current)) {
+                    current = load();
+                }
+                return current;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean needsRebuild(CatalogCache.Snapshot current) {
+            return stale || remoteVersion > current.version();
+        }
+
+        // Called with lock held
+        private CatalogCache.Snapshot load() {
+            stale = false;
+            // Version and rows from the same snapshot
+            CatalogCache.Snapshot loaded = snapshotReads.execute(tx -> read());
+            if (evicted) {
+                return loaded; // Dropped while we held a stale reference; serve once, keep nothing
+            }
+
+            long size = estimateBytes(loaded.meals());
+            residentBytes.addAndGet(size - bytes);
+            bytes = size;
+            index = loaded;
+            log.info("Household {} catalog loaded: version {}, {} meals, ~{} KB",
+                    household, loaded.version(), loaded.size(), size / 1024);
+            enforceBudget(this);
+            return loaded;
+        }
+
+        private CatalogCache.Snapshot read() {
+            List<Map<String, Object>> head = jdbc.queryForList(
+                    "SELECT catalog_version, NOW() AS db_now FROM households WHERE id = ?", household);
+            if (head.isEmpty()) {
+                entries.remove(household, this);
+                throw new UnknownHouseholdException(household);
+            }
+            long version = ((Number) head.get(0).get("catalog_version")).longValue();
+            Timestamp dbNow = (Timestamp) head.get(0).get("db_now");
+
+            TreeMap<Long, Meal> byId = new TreeMap<>();
+            jdbc.query("""
+                    SELECT id, name, protein, cuisine,
+                           cook_time AS cookTime, cook_method AS cookMethod, source, category,
+                           household_id AS householdId
+                      FROM meals
+                     WHERE household_id = ?
+                    """, (RowCallbackHandler) rs -> {
+                Meal m = mealRowMapper.mapRow(rs, rs.getRow());
+                byId.put(m.getId(), m);
+            }, household);
+            return new CatalogCache.Snapshot(version, dbNow, byId);
+        }
+    }
+
+    private static long estimateBytes(Collection<Meal> meals) {
+        long total = 0;
+        for (Meal m : meals) {
+            total += MEAL_OVERHEAD_BYTES
+                    + stringBytes(m.getName()) + stringBytes(m.getProtein()) + stringBytes(m.getCuisine())
+                    + stringBytes(m.getCookTime()) + stringBytes(m.getCookMethod())
+                    + stringBytes(m.getSource()) + stringBytes(m.getCategory());
+        }
+        return total;
+    }
+
+    private static long stringBytes(String s) {
+        return s == null ? 0 : STRING_OVERHEAD_BYTES + s.length();
+    }
+
+    /** Thrown when a request names a household that does not exist. */
+    public static class UnknownHouseholdException extends IllegalArgumentException {
+        public UnknownHouseholdException(long household) {
+            super("Unknown household " + household);
+        }
+    }
+
+    /**
+     * Base library followed by the household's own meals. Lists are views over
+     * both snapshots, so nothing from the base library is copied per household.
+     */
+    private static final class Overlay implements CatalogView {
+        private final long household;
+        private final CatalogCache.Snapshot shared;
+        private final CatalogCache.Snapshot own;
+
+        Overlay(long household, CatalogCache.Snapshot shared, CatalogCache.Snapshot own) {
+            this.household = household;
+            this.shared = shared;
+            this.own = own;
+        }
+
+        @Override public Long household() { return household; }
+        @Override public long version() { return shared.version(); }
+        @Override public long householdVersion() { return own.version(); }
+        @Override public int size() { return shared.size() + own.size(); }
+        @Override public List<Meal> meals() { return concat(shared.meals(), own.meals()); }
+
+        @Override
+        public Meal get(long id) {
+            Meal m = own.get(id);
+            return m != null ? m : shared.get(id);
+        }
+
+        @Override
+        public List<Meal> byProtein(String protein) {
+            return concat(shared.byProtein(protein), own.byProtein(protein));
+        }
+
+        @Override
+        public List<String> proteins() {
+            if (own.proteins().isEmpty()) return shared.proteins();
+            SortedSet<String> names = new TreeSet<>(shared.proteins());
+            names.addAll(own.proteins());
+            return List.copyOf(names);
+        }
+    }
+
+    private static <T> List<T> concat(List<T> first, List<T> second) {
+        if (second.isEmpty()) return first;
+        if (first.isEmpty()) return second;
+        return new Concat<>(first, second);
+    }
+
+    private static final class Concat<T> extends AbstractList<T> implements RandomAccess {
+        private final List<T> first;
+        private final List<T> second;
+
+        Concat(List<T> first, List<T> second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public T get(int index) {
+            int n = first.size();
+            return index < n ? first.get(index) : second.get(index - n);
+        }
+
+        @Override
+        public int size() {
+            return first.size() + second.size();
+        }
+    }
+}
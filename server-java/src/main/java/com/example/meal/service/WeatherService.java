@@ -3,19 +3,31 @@ package com.example.meal.service;
 import com.example.meal.dto.WeatherDay;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 @Service
 public class WeatherService {
@@ -40,24 +52,166 @@ public class WeatherService {
     private static final double DEFAULT_LAT = 37.3382;   // San Jose, CA
     private static final double DEFAULT_LON = -121.8863;
 
-    private final HttpClient http = HttpClient.newHttpClient();
+    // Upstream calls must fail fast; a hung Open-Meteo request pins a request thread
+    @Value("${weather.timeout-ms:4000}")
+    private long timeoutMs;
+
+    // Fresh forecasts are reused this long before asking Open-Meteo again
+    @Value("${weather.cache.ttl-minutes:30}")
+    private long cacheTtlMinutes;
+
+    // Geohash length for cache buckets; 5 chars is a cell of roughly 4.9 x 4.9 km
+    @Value("${weather.geohash.precision:5}")
+    private int geohashPrecision;
+
+    // How many of the most-requested buckets the scheduled job keeps warm
+    @Value("${weather.prewarm.top-buckets:20}")
+    private int prewarmTopBuckets;
+
+    private static final int MAX_CACHED_FORECASTS = 256;
+    private static final int PREWARM_DAYS = 7;
+    // Bounds demand tracking; buckets beyond this are served but not pre-warmed
+    private static final int MAX_TRACKED_BUCKETS = 10_000;
+    private static final int FETCH_THREADS = 4;
+    private static final int FETCH_QUEUE = 64;
+
+    private final HttpClient http = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(3))
+            .build();
     private final ObjectMapper mapper = new ObjectMapper();
 
+    // Last good forecast per (location, start, days); also the fallback when we shed load
+    private final Map<String, CachedForecast> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedForecast> eldest) {
+            return size() > MAX_CACHED_FORECASTS;
+        }
+    };
+
+    // Upstream fetches in progress per cache key; requests, prefetches and the pre-warm
+    // asking for the same forecast meanwhile wait for that one instead of calling again
+    private final Map<String, CompletableFuture<List<WeatherDay>>> inFlight = new ConcurrentHashMap<>();
+
+    // Request counts per bucket since the last pre-warm, used to pick what to pre-fetch
+    private final Map<Bucket, LongAdder> demand = new ConcurrentHashMap<>();
+
+    // Background fetches (pre-warm, menu-flow prefetch) run here, off the shared scheduler
+    // thread; when the queue is full the fetch is dropped and the request path fetches on demand.
+    private final ThreadPoolExecutor fetcher = new ThreadPoolExecutor(
+            FETCH_THREADS, FETCH_THREADS, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(FETCH_QUEUE),
+            r -> {
+                Thread t = new Thread(r, "weather-fetch");
+                t.setDaemon(true);
+                return t;
+            },
+            new ThreadPoolExecutor.DiscardPolicy());
+
+    private final PostalCodeDirectory postalCodes;
+
+    public WeatherService(PostalCodeDirectory postalCodes) {
+        this.postalCodes = postalCodes;
+        fetcher.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fetcher.shutdownNow();
+    }
+
+    /**
+     * Explicit coordinates win, then a postal code; {lat, lon}, or null for the configured location.
+     * @throws IllegalArgumentException if the postal code is not in the table
+     */
+    public double[] locate(Double lat, Double lon, String postalCode) {
+        if (lat != null && lon != null) return new double[] {lat, lon};
+        if (postalCode == null || postalCode.isBlank()) return null;
+        double[] coords = postalCodes.lookup(postalCode);
+        if (coords == null) {
+            throw new IllegalArgumentException("Unknown postal code '" + postalCode.trim() + "'");
+        }
+        return coords;
+    }
+
     /** Backward-compat entry point */
     public List<WeatherDay> getDailyForecast(int days) {
         return getDailyForecast(days, null);
     }
 
-    /** Honors chosen startDate (may be null → today in configured tz). ALWAYS returns. */
+    /** Forecast for the configured location. */
     public List<WeatherDay> getDailyForecast(int days, LocalDate startOverride) {
+        return getDailyForecast(days, startOverride, null, null);
+    }
+
+    /**
+     * Honors chosen startDate (may be null → today in configured tz) and an optional
+     * location (null → configured weather.lat/lon). ALWAYS returns.
+     */
+    public List<WeatherDay> getDailyForecast(int days, LocalDate startOverride, Double latOverride, Double lonOverride) {
         final int d = Math.max(1, Math.min(days, 14)); // clamp 1..14
+        final LocalDate start = (startOverride != null) ? startOverride : LocalDate.now(safeZoneId(tzProp));
+        final Bucket bucket = bucketFor(latOverride, lonOverride);
+        LongAdder count = demand.get(bucket);
+        if (count == null && demand.size() < MAX_TRACKED_BUCKETS) {
+            count = demand.computeIfAbsent(bucket, b -> new LongAdder());
+        }
+        if (count != null) count.increment();
+        return forecastFor(bucket, d, start);
+    }
 
-        final ZoneId zone = safeZoneId(tzProp);
-        final LocalDate start = (startOverride != null) ? startOverride : LocalDate.now(zone);
+    /**
+     * Warm the cache for a forecast the client is about to ask for (the menu flow fetches
+     * weather right after generating). Returns immediately; does not count as demand.
+     */
+    public void prefetch(int days, LocalDate startOverride, double[] location) {
+        final int d = Math.max(1, Math.min(days, 14));
+        final LocalDate start = (startOverride != null) ? startOverride : LocalDate.now(safeZoneId(tzProp));
+        final Bucket bucket = (location == null) ? bucketFor(null, null) : bucketFor(location[0], location[1]);
+        fetcher.execute(() -> forecastFor(bucket, d, start));
+    }
+
+    /**
+     * Fetch (or reuse) the forecast for one geohash bucket. Only one upstream call per
+     * cache key runs at a time; anyone else asking meanwhile gets its result.
+     */
+    private List<WeatherDay> forecastFor(Bucket bucket, int d, LocalDate start) {
+        final String cacheKey = cacheKey(bucket, start, d);
+        CachedForecast cached = cached(cacheKey);
+        if (cached != null && cached.fetchedAtMillis > System.currentTimeMillis() - cacheTtlMinutes * 60_000) {
+            return cached.days;
+        }
+
+        CompletableFuture<List<WeatherDay>> mine = new CompletableFuture<>();
+        CompletableFuture<List<WeatherDay>> running = inFlight.putIfAbsent(cacheKey, mine);
+        if (running != null) {
+            try {
+                return running.get(timeoutMs + 1000, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.warn("Waiting for in-flight forecast {} failed: {}", cacheKey, e.toString());
+            }
+            return (cached != null) ? cached.days : stubForecast(d, start);
+        }
+        try {
+            List<WeatherDay> result = fetch(bucket, d, start, cacheKey, cached);
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(cacheKey, mine);
+        }
+    }
+
+    // One Open-Meteo call; coordinates sent upstream are the cell center. Never throws.
+    private List<WeatherDay> fetch(Bucket bucket, int d, LocalDate start, String cacheKey, CachedForecast cached) {
         final LocalDate end = start.plusDays(d - 1);
 
-        final double lat = parseOrDefault(latProp, DEFAULT_LAT);
-        final double lon = parseOrDefault(lonProp, DEFAULT_LON);
+        final double[] center = Geohash.center(bucket.geohash());
+        final double lat = center[0];
+        final double lon = center[1];
 
         final String tempPref = safeLower(tempMode); // midday|max|min|mean
         final boolean useMidday = tempPref.isEmpty() || tempPref.equals("midday") || tempPref.equals("daytime");
@@ -69,7 +223,7 @@ public class WeatherService {
             default -> "temperature_2m_max";
         };
 
-        final String tzForUrl = encodeTimezone(zone.getId());
+        final String tzForUrl = encodeTimezone(bucket.timezone());
         final String url = String.format(
                 "https://api.open-meteo.com/v1/forecast?latitude=%f&longitude=%f"
                         + "&daily=%s,weathercode"
@@ -80,16 +234,18 @@ public class WeatherService {
                 lat, lon, tempDailyField, tzForUrl, start, end
         );
 
-        log.info("WeatherService: lat={}, lon={}, tz={}, tempMode={}, start={}, end={}",
-                lat, lon, zone.getId(), tempPref, start, end);
+        log.info("WeatherService: bucket={}, lat={}, lon={}, tz={}, tempMode={}, start={}, end={}",
+                bucket.geohash(), lat, lon, bucket.timezone(), tempPref, start, end);
         log.info("WeatherService: GET {}", url);
 
         try {
-            HttpRequest req = HttpRequest.newBuilder(URI.create(url)).GET().build();
+            HttpRequest req = HttpRequest.newBuilder(URI.create(url))
+                    .timeout(Duration.ofMillis(timeoutMs))
+                    .GET().build();
             HttpResponse<String> res = http.send(req, HttpResponse.BodyHandlers.ofString());
             if (res.statusCode() / 100 != 2) {
                 log.warn("Open-Meteo non-2xx status: {}", res.statusCode());
-                return stubForecast(d, start);
+                return (cached != null) ? cached.days : stubForecast(d, start);
             }
 
             JsonNode root = mapper.readTree(res.body());
@@ -147,14 +303,82 @@ public class WeatherService {
                 log.info("WeatherService: first day {} => {}°F, {}, desc='{}'",
                         first.getDate(), first.getTempF(), first.getCondition(), first.getDescription());
             }
-            return out;
+            List<WeatherDay> result = List.copyOf(out);
+            synchronized (cache) {
+                cache.put(cacheKey, new CachedForecast(result, System.currentTimeMillis()));
+            }
+            return result;
 
         } catch (Exception e) {
             log.error("Open-Meteo error: {}", e.toString());
-            return stubForecast(d, start);
+            return (cached != null) ? cached.days : stubForecast(d, start);
         }
     }
 
+    /**
+     * Degraded path used when the weather endpoint is shedding load: never calls
+     * Open-Meteo, returns the last good forecast however old, else the stub.
+     */
+    public List<WeatherDay> getCachedOrStub(int days, LocalDate startOverride, Double latOverride, Double lonOverride) {
+        final int d = Math.max(1, Math.min(days, 14));
+        final LocalDate start = (startOverride != null) ? startOverride : LocalDate.now(safeZoneId(tzProp));
+
+        CachedForecast cached = cached(cacheKey(bucketFor(latOverride, lonOverride), start, d));
+        return (cached != null) ? cached.days : stubForecast(d, start);
+    }
+
+    /**
+     * Pre-fetch the week ahead for the most-requested buckets, so the morning peak
+     * hits a warm cache. Runs every 20 minutes from 5 to 9am by default, which keeps
+     * entries inside the cache TTL through the peak. Fetches are queued on the weather
+     * executor so slow upstream calls never hold the shared scheduler thread, and share
+     * any upstream call a request or prefetch already has running for the same forecast. Demand
+     * counts are halved after each run so popularity follows recent traffic.
+     */
+    @Scheduled(cron = "${weather.prewarm.cron:0 */20 5-8 * * *}", zone = "${weather.tz:America/Los_Angeles}")
+    public void prewarm() {
+        List<Bucket> top = demand.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<Bucket, LongAdder> e) -> e.getValue().sum()).reversed())
+                .limit(prewarmTopBuckets)
+                .map(Map.Entry::getKey)
+                .toList();
+        LocalDate today = LocalDate.now(safeZoneId(tzProp));
+        log.info("Weather pre-warm: {} buckets", top.size());
+        for (Bucket b : top) {
+            fetcher.execute(() -> forecastFor(b, PREWARM_DAYS, today));
+        }
+        demand.values().removeIf(count -> {
+            long half = count.sumThenReset() / 2;
+            count.add(half);
+            return half == 0;
+        });
+    }
+
+    // Valid per-request coordinates get Open-Meteo's timezone=auto so day boundaries
+    // follow the location; otherwise the configured location and timezone are used.
+    private Bucket bucketFor(Double latOverride, Double lonOverride) {
+        boolean custom = latOverride != null && lonOverride != null
+                && Math.abs(latOverride) <= 90 && Math.abs(lonOverride) <= 180;
+        double lat = custom ? latOverride : parseOrDefault(latProp, DEFAULT_LAT);
+        double lon = custom ? lonOverride : parseOrDefault(lonProp, DEFAULT_LON);
+        String tz = custom ? "auto" : safeZoneId(tzProp).getId();
+        return new Bucket(Geohash.encode(lat, lon, geohashPrecision), tz);
+    }
+
+    private CachedForecast cached(String key) {
+        synchronized (cache) {
+            return cache.get(key);
+        }
+    }
+
+    private static String cacheKey(Bucket bucket, LocalDate start, int days) {
+        return bucket.geohash() + "|" + bucket.timezone() + "|" + start + "|" + days;
+    }
+
+    private record Bucket(String geohash, String timezone) {}
+
+    private record CachedForecast(List<WeatherDay> days, long fetchedAtMillis) {}
+
     /** Pick the 11–15 local hour with the LOWEST cloud cover; capture its code and temperature (°F). */
     private static MiddayPick pickSunniestMidday(LocalDate date, JsonNode hourlyTimes, JsonNode hourlyCodes,
                                                  JsonNode hourlyClouds, JsonNode hourlyTemps) {
@@ -0,0 +1,82 @@
+package com.example.meal.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConcurrencyLimiterTest {
+
+    private static final long MICROS = 1_000;
+    private static final long MILLIS = 1_000_000;
+
+    private static ConcurrencyLimiter limiter(int initial, int min, int max) {
+        return new ConcurrencyLimiter("test", initial, min, max, 2.0, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void rejectsOnceLimitIsReached() {
+        ConcurrencyLimiter limiter = limiter(3, 1, 10);
+        List<ConcurrencyLimiter.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < 3; i++) permits.add(limiter.tryAcquire());
+
+        assertThat(permits).doesNotContainNull();
+        assertThat(limiter.tryAcquire()).isNull();
+
+        permits.get(0).release();
+        assertThat(limiter.tryAcquire()).isNotNull();
+    }
+
+    @Test
+    void mixedFastAndSlowResponsesWithoutOverloadKeepTheLimit() {
+        // One request at a time, one in five slow (a cache miss next to hits)
+        ConcurrencyLimiter limiter = limiter(10, 2, 50);
+        for (int i = 0; i < 20_000; i++) {
+            limiter.onSample(i % 5 == 0 ? 2 * MILLIS : 50 * MICROS, 1);
+        }
+        assertThat(limiter.getLimit()).isEqualTo(10);
+    }
+
+    @Test
+    void mixedResponsesAtFullUseStillGrow() {
+        // Latency doesn't depend on concurrency, so using the whole limit is fine
+        ConcurrencyLimiter limiter = limiter(10, 2, 50);
+        for (int i = 0; i < 20_000; i++) {
+            limiter.onSample(i % 5 == 0 ? 2 * MILLIS : 50 * MICROS, limiter.getLimit());
+        }
+        assertThat(limiter.getLimit()).isGreaterThan(10);
+    }
+
+    @Test
+    void overloadShrinksLimitTowardsCapacity() {
+        // Backend serves 4 requests in parallel in 1 ms; beyond that requests queue
+        ConcurrencyLimiter limiter = limiter(20, 2, 100);
+        int capacity = 4;
+
+        // Light load: two clients, no queueing
+        simulate(limiter, 2, capacity, 2_000);
+        assertThat(limiter.getLimit()).isEqualTo(20);
+
+        // Forty clients: without a limit every request would take 10 ms
+        simulate(limiter, 40, capacity, 400);
+        int limit = limiter.getLimit();
+        assertThat(limit).isBetween(capacity, 2 * capacity);
+        assertThat(rtt(limit, capacity)).isLessThanOrEqualTo(2 * MILLIS);
+    }
+
+    // Each tick, as many clients as the limit admits run concurrently
+    private static void simulate(ConcurrencyLimiter limiter, int clients, int capacity, int ticks) {
+        for (int t = 0; t < ticks; t++) {
+            int admitted = Math.min(clients, limiter.getLimit());
+            long rtt = rtt(admitted, capacity);
+            for (int i = 0; i < admitted; i++) limiter.onSample(rtt, admitted);
+        }
+    }
+
+    private static long rtt(int inFlight, int capacity) {
+        return (long) (MILLIS * Math.max(1.0, (double) inFlight / capacity));
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.meal.service;
+
+import com.example.meal.Meal;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static com.example.meal.service.MenuSequencerTest.*;
+
+/**
+ * Latency benchmark: worst-case (node cap exhausted, maximum pool) and typical
+ * (random large catalog) sequencing times, printed as percentiles. Not part of
+ * the default test run (surefire only picks up *Test classes); run it with
+ * {@code mvn test -Dtest=MenuSequencerBenchmark}.
+ */
+class MenuSequencerBenchmark {
+
+    private final MenuSequencer sequencer = new MenuSequencer(RULES, MAX_NODES, MAX_POOL);
+
+    @Test
+    void latencyOnLargeCatalogs() {
+        List<Meal> worst = deadEndAtTheLastMain();
+        Random rnd = new Random(3);
+        List<Meal> all = catalog(rnd);
+
+        for (int i = 0; i < 20; i++) sequencer.sequence(List.of(), worst, 14); // warm up
+
+        long[] worstNanos = new long[50];
+        for (int i = 0; i < worstNanos.length; i++) {
+            long t0 = System.nanoTime();
+            sequencer.sequence(List.of(), worst, 14);
+            worstNanos[i] = System.nanoTime() - t0;
+        }
+
+        long[] typicalNanos = new long[500];
+        for (int i = 0; i < typicalNanos.length; i++) {
+            Collections.shuffle(all, rnd);
+            List<MenuSequencer.Quota> quotas = List.of(
+                    new MenuSequencer.Quota(byProtein(all, "Beef", 32), 3),
+                    new MenuSequencer.Quota(byProtein(all, "Fish", 32), 2));
+            long t0 = System.nanoTime();
+            sequencer.sequence(quotas, all.subList(0, 64), 14);
+            typicalNanos[i] = System.nanoTime() - t0;
+        }
+
+        System.out.printf("MenuSequencer %d-node cap, %d-meal pool: worst case p50=%.1fms p99=%.1fms max=%.1fms%n",
+                MAX_NODES, MAX_POOL, ms(worstNanos, 0.50), ms(worstNanos, 0.99), ms(worstNanos, 1.0));
+        System.out.printf("MenuSequencer random %d-meal catalog: p50=%.3fms p99=%.3fms max=%.3fms%n",
+                CATALOG, ms(typicalNanos, 0.50), ms(typicalNanos, 0.99), ms(typicalNanos, 1.0));
+    }
+
+    private static double ms(long[] nanos, double q) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        int i = (int) Math.min(sorted.length - 1, Math.ceil(q * sorted.length) - 1);
+        return sorted[Math.max(0, i)] / 1e6;
+    }
+}
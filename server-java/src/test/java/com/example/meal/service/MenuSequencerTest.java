@@ -0,0 +1,131 @@
+package com.example.meal.service;
+
+import com.example.meal.Meal;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
+
+class MenuSequencerTest {
+
+    static final MenuSequencer.Rules RULES = new MenuSequencer.Rules(2, true, true, true, true);
+    static final long MAX_NODES = 200_000;   // the production default
+    static final int MAX_POOL = 256;
+    static final int CATALOG = 50_000;
+
+    private static final String[] PROTEINS = {"Chicken", "Beef", "Pork", "Fish", "Tofu", "Lamb", "Shrimp"};
+    private static final String[] CUISINES = {"Italian", "Mexican", "Thai", "Indian", "American", "Japanese"};
+    private static final String[] METHODS = {"Stovetop", "Oven", "Grill", "Slow Cooker"};
+
+    private final MenuSequencer sequencer = new MenuSequencer(RULES, MAX_NODES, MAX_POOL);
+
+    private static Meal meal(long id, String protein, String cuisine, String method, String category) {
+        Meal m = new Meal(id, "Meal " + id, protein, cuisine, "30 minutes", method, "test");
+        m.setCategory(category);
+        return m;
+    }
+
+    static List<Meal> catalog(Random rnd) {
+        List<Meal> meals = new ArrayList<>(CATALOG);
+        for (long id = 1; id <= CATALOG; id++) {
+            meals.add(meal(id,
+                    PROTEINS[rnd.nextInt(PROTEINS.length)],
+                    CUISINES[rnd.nextInt(CUISINES.length)],
+                    METHODS[rnd.nextInt(METHODS.length)],
+                    rnd.nextInt(6) == 0 ? "Soup" : "Main"));
+        }
+        return meals;
+    }
+
+    // 250 soups and 6 other meals: two weeks with no soups on adjacent days needs 7
+    // non-soup days, which the up-front check rules out before searching
+    private static List<Meal> unsolvable() {
+        List<Meal> meals = new ArrayList<>();
+        for (long id = 1; id <= 250; id++) meals.add(meal(id, "", "", "Stovetop", "Soup"));
+        for (long id = 251; id <= 256; id++) meals.add(meal(id, "", "", "Stovetop", "Main"));
+        return meals;
+    }
+
+    // 249 Thai soups and 7 other meals: two weeks must alternate soup and main, so
+    // every main sits next to a soup, and one Thai main never can. The counts all
+    // add up, so every branch fails only at that main, deep in the tree.
+    static List<Meal> deadEndAtTheLastMain() {
+        List<Meal> meals = new ArrayList<>();
+        for (long id = 1; id <= 249; id++) meals.add(meal(id, "", "Thai", "Stovetop", "Soup"));
+        for (long id = 250; id <= 255; id++) meals.add(meal(id, "", "", "Stovetop", "Main"));
+        meals.add(meal(256, "", "Thai", "Stovetop", "Main"));
+        return meals;
+    }
+
+    @Test
+    void honorsSequencingRulesOnALargeCatalog() {
+        Random rnd = new Random(7);
+        List<Meal> all = catalog(rnd);
+        for (int run = 0; run < 200; run++) {
+            Collections.shuffle(all, rnd);
+            List<Meal> menu = sequencer.sequence(List.of(), all.subList(0, 64), 14);
+
+            assertThat(menu).hasSize(14).doesNotHaveDuplicates();
+            long slow = menu.stream().filter(m -> "Slow Cooker".equals(m.getCookMethod())).count();
+            assertThat(slow).isLessThanOrEqualTo(2);
+            for (int d = 1; d < menu.size(); d++) {
+                assertThat(sequencer.fits(menu, d, menu.get(d))).as("day %d of run %d", d, run).isTrue();
+            }
+        }
+    }
+
+    @Test
+    void sameInputReplaysToTheSameMenuEvenWhenTheNodeCapIsHit() {
+        List<Meal> pool = deadEndAtTheLastMain();
+        List<Meal> first = sequencer.sequence(List.of(), pool, 14);
+        for (int run = 0; run < 5; run++) {
+            assertThat(sequencer.sequence(List.of(), pool, 14)).isEqualTo(first);
+        }
+        assertThat(first).hasSize(14).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void impossibleQuotasFailFastInsteadOfExhaustingTheNodeCap() {
+        // Without the up-front check either case would search 50M nodes, taking seconds
+        MenuSequencer uncapped = new MenuSequencer(RULES, 50_000_000, MAX_POOL);
+        List<Meal> all = catalog(new Random(5));
+        List<Meal> beef = byProtein(all, "Beef", 32);
+
+        assertTimeout(Duration.ofSeconds(2), () -> {
+            // 8 beef days in 14 can't all be kept apart
+            List<Meal> menu = uncapped.sequence(List.of(new MenuSequencer.Quota(beef, 8)), all.subList(0, 64), 14);
+            assertThat(menu).hasSize(14).doesNotHaveDuplicates();
+            assertThat(menu.stream().filter(m -> "Beef".equals(m.getProtein()))).hasSize(8);
+
+            assertThat(uncapped.sequence(List.of(), unsolvable(), 14)).hasSize(14).doesNotHaveDuplicates();
+        });
+    }
+
+    @Test
+    void poolIsCappedWhateverTheCallerPasses() {
+        List<Meal> all = catalog(new Random(11));
+        MenuSequencer small = new MenuSequencer(RULES, MAX_NODES, 20);
+        List<Meal> menu = small.sequence(List.of(), all, 14);
+        assertThat(all.subList(0, 20)).containsAll(menu);
+    }
+
+    // The full latency benchmark, with percentiles, is MenuSequencerBenchmark
+    @Test
+    void worstCaseStaysUnderALooseBound() {
+        List<Meal> worst = deadEndAtTheLastMain();
+        sequencer.sequence(List.of(), worst, 14); // warm up
+        assertTimeout(Duration.ofMillis(1500), () -> {
+            for (int i = 0; i < 3; i++) sequencer.sequence(List.of(), worst, 14);
+        });
+    }
+
+    static List<Meal> byProtein(List<Meal> meals, String protein, int n) {
+        return meals.stream().filter(m -> protein.equals(m.getProtein())).limit(n).toList();
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.meal.service;
+
+import com.example.meal.Meal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SimilarMealsTest {
+
+    private static final long HOUSEHOLD = 7;
+
+    private final SimilarMeals similar = new SimilarMeals();
+
+    SimilarMealsTest() {
+        ReflectionTestUtils.setField(similar, "neighbours", 4);
+    }
+
+    @AfterEach
+    void shutdown() {
+        similar.shutdown();
+    }
+
+    private static Meal meal(long id, String name, String protein, String cuisine, String cookTime, String method) {
+        Meal m = new Meal(id, name, protein, cuisine, cookTime, method, "test");
+        m.setCategory("Main");
+        return m;
+    }
+
+    private static Meal own(long id, String name, String protein, String cuisine, String cookTime, String method) {
+        Meal m = meal(id, name, protein, cuisine, cookTime, method);
+        m.setHouseholdId(HOUSEHOLD);
+        return m;
+    }
+
+    private static CatalogCache.Snapshot base(long version) {
+        TreeMap<Long, Meal> byId = new TreeMap<>();
+        byId.put(1L, meal(1, "Chicken Tikka Masala", "Chicken", "Indian", "45 minutes", "Stovetop"));
+        byId.put(2L, meal(2, "Beef Tacos", "Beef", "Mexican", "30 minutes", "Stovetop"));
+        byId.put(3L, meal(3, "Chicken Fajitas", "Chicken", "Mexican", "30 minutes", "Stovetop"));
+        byId.put(4L, meal(4, "Pork Ramen", "Pork", "Japanese", "2 hours", "Stovetop"));
+        byId.put(5L, meal(5, "Fish Curry", "Fish", "Indian", "45 minutes", "Stovetop"));
+        for (long id = 6; id <= 40; id++) {
+            byId.put(id, meal(id, "Filler " + id, "Tofu", "Thai", "> 2 hours", "Oven"));
+        }
+        return new CatalogCache.Snapshot(version, null, byId);
+    }
+
+    private static CatalogView household(CatalogCache.Snapshot shared, long householdVersion, List<Meal> own) {
+        List<Meal> all = new ArrayList<>(shared.meals());
+        all.addAll(own);
+        return new CatalogView() {
+            @Override public Long household() { return HOUSEHOLD; }
+            @Override public long version() { return shared.version(); }
+            @Override public long householdVersion() { return householdVersion; }
+            @Override public int size() { return all.size(); }
+            @Override public List<Meal> meals() { return all; }
+            @Override public Meal get(long id) { return all.stream().filter(m -> m.getId() == id).findFirst().orElse(null); }
+            @Override public List<Meal> byProtein(String protein) { return List.of(); }
+            @Override public List<String> proteins() { return shared.proteins(); }
+        };
+    }
+
+    private static List<Long> ids(List<Meal> meals) {
+        return meals.stream().map(Meal::getId).toList();
+    }
+
+    @Test
+    void householdMealsOverlayTheBaseLibrary() {
+        CatalogCache.Snapshot shared = base(1);
+        CatalogView home = household(shared, 1,
+                List.of(own(101, "Chicken Tikka Skewers", "Chicken", "Indian", "45 minutes", "Stovetop")));
+
+        // The base library alone never sees the household's meal
+        assertThat(ids(similar.similar(shared, 1, 3, true, m -> true))).doesNotContain(101L);
+        // In the household, base meals pick it up and it ranks against the base library
+        assertThat(ids(similar.similar(home, 1, 3, true, m -> true))).startsWith(101L);
+        assertThat(ids(similar.similar(home, 101, 3, false, m -> true))).startsWith(1L).contains(3L, 5L);
+        // Filtering out every precomputed neighbour still finds the rest by scanning
+        assertThat(ids(similar.similar(home, 101, 2, false, m -> m.getId() > 5))).hasSize(2);
+    }
+
+    @Test
+    void rebuildsInTheBackgroundWhenTheHouseholdVersionMoves() throws InterruptedException {
+        CatalogCache.Snapshot shared = base(1);
+        Meal skewers = own(101, "Chicken Tikka Skewers", "Chicken", "Indian", "45 minutes", "Stovetop");
+        similar.similar(household(shared, 1, List.of(skewers)), 1, 3, true, m -> true);
+
+        CatalogView moved = household(shared, 2,
+                List.of(skewers, own(102, "Chicken Tikka Wraps", "Chicken", "Indian", "45 minutes", "Stovetop")));
+        List<Long> found = ids(similar.similar(moved, 1, 3, true, m -> true));
+        for (int i = 0; i < 100 && !found.contains(102L); i++) {
+            Thread.sleep(50);
+            found = ids(similar.similar(moved, 1, 3, true, m -> true));
+        }
+        assertThat(found).contains(101L, 102L);
+    }
+
+    @Test
+    void prepareIndexesTheBaseLibraryAhead() throws InterruptedException {
+        CatalogCache.Snapshot shared = base(1);
+        similar.prepare(shared);
+        // The build runs on the builder thread; a lookup queued behind it finds it done
+        CountDownLatch built = new CountDownLatch(1);
+        ((ThreadPoolExecutor) ReflectionTestUtils.getField(similar, "builder")).execute(built::countDown);
+        assertThat(built.await(5, TimeUnit.SECONDS)).isTrue();
+        Object slot = ReflectionTestUtils.getField(similar, "base");
+        assertThat(ReflectionTestUtils.getField(slot, "current")).isNotNull();
+        assertThat(ids(similar.similar(shared, 1, 3, true, m -> true))).isNotEmpty();
+    }
+
+    @Test
+    void timeBucketHonoursQualifiers() {
+        assertThat(SimilarMeals.timeBucket("< 30 minutes")).isEqualTo(0);
+        assertThat(SimilarMeals.timeBucket("30 minutes")).isEqualTo(0);
+        assertThat(SimilarMeals.timeBucket(">30")).isEqualTo(1);
+        assertThat(SimilarMeals.timeBucket("over 30 min")).isEqualTo(1);
+        assertThat(SimilarMeals.timeBucket("45 minutes")).isEqualTo(1);
+        assertThat(SimilarMeals.timeBucket("1 hour")).isEqualTo(1);
+        assertThat(SimilarMeals.timeBucket("1+ hours")).isEqualTo(2);
+        assertThat(SimilarMeals.timeBucket("> 2 hours")).isEqualTo(3);
+        assertThat(SimilarMeals.timeBucket("Slow")).isEqualTo(-1);
+    }
+}
@@ -0,0 +1,72 @@
+#!/bin/bash
+
+# Startup benchmark for the Spring Boot server.
+# Measures time from process launch to the first successful POST /api/menu/generate,
+# and the process RSS at that moment, for the JVM jar, the AOT+CDS jar and the
+# native image.
+#
+# Usage (from server-java/, with the usual spring.datasource.* settings exported
+# as env vars or in application properties):
+#   mvn -DskipTests package                          && ./startup-bench.sh jvm
+#   mvn -Paot -DskipTests package                    && ./startup-bench.sh aot
+#   mvn -Pnative -DskipTests native:compile          && ./startup-bench.sh native
+#
+# RUNS (default 5) and PORT (default 8080) can be overridden from the environment.
+
+set -e
+
+MODE=${1:-jvm}
+RUNS=${RUNS:-5}
+PORT=${PORT:-8080}
+JAR=target/meal-generator-0.0.1-SNAPSHOT.jar
+URL="http://localhost:${PORT}/api/menu/generate"
+BODY='{"proteinDistribution":{"Chicken":2,"Beef":2},"days":7,"seed":42}'
+
+case "$MODE" in
+    jvm)
+        CMD=(java -jar "$JAR")
+        ;;
+    aot)
+        # CDS needs an exploded classpath; archive it once with a training run
+        # that exits as soon as the context is refreshed.
+        rm -rf target/cds && mkdir -p target/cds
+        (cd target/cds && jar -xf "../../$JAR")
+        CP="target/cds/BOOT-INF/classes:$(ls target/cds/BOOT-INF/lib/*.jar | tr '\n' ':')"
+        java -XX:ArchiveClassesAtExit=target/cds/app.jsa -Dspring.context.exit=onRefresh \
+             -Dspring.aot.enabled=true -cp "$CP" com.example.meal.MealApplication > /dev/null
+        CMD=(java -XX:SharedArchiveFile=target/cds/app.jsa -Dspring.aot.enabled=true -cp "$CP" com.example.meal.MealApplication)
+        ;;
+    native)
+        CMD=(target/meal-generator)
+        ;;
+    *)
+        echo "Usage: $0 jvm|aot|native"
+        exit 1
+        ;;
+esac
+
+now_ms() { date +%s%3N; }
+
+echo "mode=$MODE runs=$RUNS"
+for run in $(seq 1 "$RUNS"); do
+    start=$(now_ms)
+    "${CMD[@]}" --server.port="$PORT" > "target/startup-bench-$MODE.log" 2>&1 &
+    pid=$!
+
+    status=000
+    while [ "$status" != "200" ]; do
+        if ! kill -0 "$pid" 2> /dev/null; then
+            echo "Server exited early; see target/startup-bench-$MODE.log"
+            exit 1
+        fi
+        status=$(curl -s -o /dev/null -w '%{http_code}' -H 'Content-Type: application/json' \
+                 -d "$BODY" "$URL" || true)
+        [ "$status" = "200" ] || sleep 0.02
+    done
+    ready=$(now_ms)
+    rss_kb=$(awk '/VmRSS/ {print $2}' "/proc/$pid/status")
+
+    echo "run=$run first_generate_ms=$((ready - start)) rss_mb=$((rss_kb / 1024))"
+    kill "$pid"
+    wait "$pid" 2> /dev/null || true
+done